@@ -1,7 +1,8 @@
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Class to analyse logs generated by the simulator
@@ -9,59 +10,98 @@ import java.util.Scanner;
  */
 public class Analyser {
 
-	// An ArrayList of the various logs
-	private ArrayList<ArrayList<String>> logs;
+	// The logged runs being analysed
+	private LogStore store;
 	
 	public Analyser() {
-		logs = new ArrayList<ArrayList<String>>();
 	}
 	
 	/**
-	 * Loads all the logs from the log file
+	 * Loads all the logs from the log store
+	 * Only the index of each segment is read, so this is quick however
+	 * many runs there are. Logs written by earlier versions are taken
+	 * into the store the first time it is used
 	 */
 	public void loadLogs() {
 		try {
-			File log = new File("Logs.dat");
-			Scanner scan = new Scanner(log);
-		   	   try {
-		   		ArrayList<String> records = null;
-		   		while(scan.hasNext())
-		   		{
-		   			String line = scan.next();
-					if(line.equalsIgnoreCase("[start]"))
-		   			{
-						records = new ArrayList<String>();
-		   			}
-		   			else if (line.equalsIgnoreCase("[finish]"))
-		   			{
-		   				logs.add(records);
-		   			}
-		   			else
-		   			{
-		   				records.add(line);
-		   			}
-		   		}
-		   	   }
-		   	   catch(NullPointerException e){
-		   		   System.out.println("Error writing logs \n"+e);
-		   	   }
+			if(store == null) {
+				store = new LogStore(new File(Logger.LOG_DIRECTORY));
+			}
+			else {
+				store.refresh();
+			}
 		}
 		catch(IOException e) {
-		    System.out.println("Error writing logs \n"+e);
+		    System.out.println("Error reading logs \n"+e);
+		}
+	}
+
+	/**
+	 * Measures every logged run in parallel
+	 * @return The measures of each run, or null if the logs cannot be read
+	 */
+	public RunAnalytics analyse() {
+		if(store == null) {
+			return null;
+		}
+		try {
+			return RunAnalytics.ofAll(store);
+		}
+		catch(IOException e) {
+		    System.out.println("Error reading logs \n"+e);
+		    return null;
 		}
 	}
 
 	/**
 	 * Checks the logs to determine which animals lastest the longest
+	 * The successor of a run is the animal that died out last, or
+	 * outlived the others
+	 * @return The name of the most common successor, or null if there are no logs
 	 */
-	public void checkSuccessor() {
+	public String checkSuccessor() {
 		// Find the most common successor
+		RunAnalytics analytics = analyse();
+		if(analytics == null) {
+			return null;
+		}
+		String[] names = analytics.getSpeciesNames();
+		int[] wins = new int[names.length];
+		for(int i=0;i<analytics.getRunCount();i++)
+		{
+			int successor = -1;
+			int lasted = -1;
+			for(int species=0;species<names.length;species++)
+			{
+				if(!isAnimal(names[species])){continue;}
+				int extinct = analytics.getExtinctionStep(i, species);
+				int steps = (extinct < 0) ? Integer.MAX_VALUE : extinct;
+				if(steps > lasted){successor = species; lasted = steps;}
+			}
+			if(successor >= 0){wins[successor]++;}
+		}
 		String ultimate = null;
-		for(int i=0;i<logs.size();i++)
+		int most = 0;
+		for(int species=0;species<names.length;species++)
 		{
-			ArrayList<String> records = logs.get(i);
-			ultimate = records.get(records.size());
-			System.out.println(ultimate);
+			if(wins[species] > most){ultimate = names[species]; most = wins[species];}
+		}
+		System.out.println(ultimate);
+		return ultimate;
+	}
+	
+	/**
+	 * Checks whether a logged species is an animal rather than an object
+	 * @param name The name of the species in the log
+	 * @return true if the species is an animal
+	 */
+	private boolean isAnimal(String name) {
+		try {
+			String className = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			return Animal.class.isAssignableFrom(Class.forName(className));
+		}
+		catch(ClassNotFoundException e) {
+			return false;
 		}
 	}
 	
@@ -70,7 +110,7 @@ public class Analyser {
 	 * @return Number of logs
 	 */
 	public int getLogCount() {
-		return logs.size();
+		return (store == null) ? 0 : store.getRunCount();
 	}
 	
 	/**
@@ -79,11 +119,99 @@ public class Analyser {
 	 */
 	public int getWorthyLogCount() {
 		int count = 0;
-		for(int i=0;i<logs.size();i++)
+		for(int i=0;i<getLogCount();i++)
 		{
-			ArrayList<String> records = logs.get(i);
-			if(records.size() > 100){count++;}
+			if(store.getSteps(i) > 100){count++;}
 		}
 		return count;
 	}
+	
+	/**
+	 * Finds the logs of runs on a field of a given size
+	 * Runs logged before the size was recorded are never found
+	 * @param depth The depth of the field
+	 * @param width The width of the field
+	 * @return The index of each log of that size
+	 */
+	public int[] getLogsOfSize(int depth, int width) {
+		int[] found = new int[getLogCount()];
+		int count = 0;
+		for(int i=0;i<getLogCount();i++)
+		{
+			if(store.getDepth(i) == depth && store.getWidth(i) == width){found[count++] = i;}
+		}
+		return Arrays.copyOf(found, count);
+	}
+	
+	/**
+	 * Starts a query over the logged runs, answered from the summary
+	 * of each run rather than its counts
+	 * @return A query choosing every run, to be narrowed with where()
+	 */
+	public LogQuery query() {
+		if(store == null) {loadLogs();}
+		return new LogQuery(store);
+	}
+	
+	/**
+	 * Reads the summary of one logged run
+	 * @param log The index of the log
+	 * @return Its length, set up and the first, lowest, highest and final count of each species
+	 */
+	public RunSummary getLogSummary(int log) {
+		try {
+			return store.getSummary(log);
+		}
+		catch(IOException e) {
+		    System.out.println("Error reading logs \n"+e);
+		    return null;
+		}
+	}
+	
+	/**
+	 * Follows the logs as runs are committed, printing totals over all
+	 * the runs so far each time. Only newly committed runs are read.
+	 * This carries on until the thread is interrupted
+	 */
+	public void tail() {
+		if(store == null) {loadLogs();}
+		try {
+			new LogTail(store).watch();
+		}
+		catch(IOException e) {
+		    System.out.println("Error reading logs \n"+e);
+		}
+	}
+	
+	/**
+	 * Reads how one logged run was set up
+	 * @param log The index of the log
+	 * @return The size of the field, the seed and the probabilities used, by name
+	 */
+	public Map<String, String> getLogParameters(int log) {
+		try {
+			return store.getProperties(log);
+		}
+		catch(IOException e) {
+		    System.out.println("Error reading logs \n"+e);
+		    return new LinkedHashMap<String, String>();
+		}
+	}
+	
+	/**
+	 * Reads the population of one species over a single logged run
+	 * @param log The index of the log
+	 * @param species The name of the species, such as "fox"
+	 * @return The count at each step, or an empty array if the species was not logged
+	 */
+	public int[] getPopulation(int log, String species) {
+		try {
+			int column = store.getSpecies(log, species);
+			return (column < 0) ? new int[0] : store.getColumn(log, column, null);
+		}
+		catch(IOException e) {
+		    System.out.println("Error reading logs \n"+e);
+		    return new int[0];
+		}
+	}
 }
@@ -1,7 +1,10 @@
-import java.util.List;
+import java.util.Random;
 
 /**
  * A class representing shared characteristics of animals.
+ * Each species provides its own act method, taking a list of
+ * its own kind for newborns, so that the simulator can update
+ * every species in a separate loop.
  * 
  * @author David J. Barnes and Michael Kolling
  */
@@ -25,23 +28,28 @@ public abstract class Animal
      * @param location The location within the field.
      */
     public Animal(Field newField, Location location)
+    {
+        this(newField, location, Randomizer.getRandom());
+    }
+    
+    /**
+     * Create a new animal at location in field, choosing its gender
+     * with the given random number generator.
+     * 
+     * @param newField The field currently occupied.
+     * @param location The location within the field.
+     * @param random The generator to choose the gender with.
+     */
+    public Animal(Field newField, Location location, Random random)
     {
         alive = true;
         diseased = false;
         field = newField;
         setLocation(location);
-        Randomizer random = new Randomizer();
-        if(random.getRandom().nextBoolean() == true)
+        if(random.nextBoolean() == true)
         	{gender = 'M';}else{gender = 'F';}
     }
     
-    /**
-     * Make this animal act - that is: make it do
-     * whatever it wants/needs to do.
-     * @param newAnimals A list to add newly born animals to.
-     */
-    abstract public void act(List<Animal> newAnimals);
-
     /**
      * Check whether the animal is alive or not.
      * @return true if the animal is still alive.
@@ -0,0 +1,582 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary log format, and how runs are appended to it.
+ *
+ * A log file starts with a header, followed by the runs one after
+ * another, followed by a footer indexing where each committed run
+ * starts:
+ *
+ *   header:  MAGIC, VERSION
+ *   run:     RUN_MAGIC, species count, the name of each species,
+ *            then any number of records, each starting with an int:
+ *              a block: the number of steps in the block, followed
+ *                by one column of counts per species
+ *              SPECIES_CHANGE, the new species count and the name of
+ *                each species, for the blocks that follow
+ *              PROPERTIES, a count and that many pairs of names and
+ *                values describing how the run was set up
+ *              COMPRESSED_BLOCK, the number of steps in the block,
+ *                then for each species the length of its column and
+ *                the column as written by BlockCodec
+ *            and finally either END_OF_RUN and the total number of
+ *            steps, which commits the run, or ABORTED
+ *   footer:  FOOTER_MAGIC, run count, the offset of each committed
+ *            run, the offset of the footer, FOOTER_MAGIC
+ *
+ * Every number is a big-endian int, apart from the offsets which are
+ * longs. A run is appended over the old footer, and a new footer is
+ * written after it once it commits. If a file has no footer, for
+ * example because the program stopped part way through a run, the
+ * runs are found by walking the records from the start. Aborted runs
+ * are stepped over, and anything after the last whole run is ignored
+ * and written over by the next run.
+ */
+public class BinaryLog
+{
+    // Marks the start of a log file, and the version of the format.
+    public static final int MAGIC = 0x464f5852;
+    public static final int VERSION = 1;
+    // Marks the start of a run.
+    public static final int RUN_MAGIC = 0x52554e21;
+    // Take the place of the step count of a block to end a run,
+    // either committing it or marking it as abandoned.
+    public static final int END_OF_RUN = 0;
+    public static final int ABORTED = -2;
+    // Take the place of the step count of a block to change the
+    // species, or to describe the run.
+    public static final int SPECIES_CHANGE = -1;
+    public static final int PROPERTIES = -3;
+    // Marks a block whose columns are compressed.
+    public static final int COMPRESSED_BLOCK = -4;
+    // Marks both ends of the footer.
+    public static final int FOOTER_MAGIC = 0x494e4458;
+    // The length of the file header, and of the end of the footer.
+    public static final int HEADER_SIZE = 8;
+    public static final int TRAILER_SIZE = 12;
+    // The most steps written in one block.
+    public static final int BLOCK_STEPS = 4096;
+
+    /**
+     * Append one run to a log file, creating the file if needed.
+     * @param file The log file.
+     * @param properties How the run was set up, by name.
+     * @param names The name of each species.
+     * @param columns The count of each species at each step.
+     * @param steps The number of steps in the run.
+     * @throws IOException If the file cannot be written, or is not a log.
+     */
+    public static void appendRun(File file, Map<String, String> properties,
+                                 String[] names, int[][] columns, int steps)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long[] offsets = readIndex(raf);
+            long end = findEnd(raf);
+            FileChannel channel = raf.getChannel();
+            channel.position(end);
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            if(end == 0) {
+                writeHeader(out);
+                end = HEADER_SIZE;
+            }
+            offsets = Arrays.copyOf(offsets, offsets.length + 1);
+            offsets[offsets.length - 1] = end;
+            writeRunStart(out, names);
+            writeProperties(out, properties);
+            BlockCodec codec = new BlockCodec();
+            for(int first = 0; first < steps; first += BLOCK_STEPS) {
+                codec.writeBlock(out, columns, first, Math.min(BLOCK_STEPS, steps - first));
+            }
+            writeRunEnd(out, steps);
+            out.flush();
+            writeFooter(out, offsets, channel.position());
+            out.flush();
+            channel.truncate(channel.position());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write the header of a new log file.
+     * @param out Where to write it.
+     * @throws IOException If the header cannot be written.
+     */
+    public static void writeHeader(DataOutputStream out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Write the start of a run.
+     * @param out Where to write it.
+     * @param names The name of each species.
+     * @throws IOException If the run cannot be written.
+     */
+    public static void writeRunStart(DataOutputStream out, String[] names) throws IOException
+    {
+        out.writeInt(RUN_MAGIC);
+        writeNames(out, names);
+    }
+
+    /**
+     * Change the species recorded by the blocks that follow.
+     * @param out Where to write it.
+     * @param names The name of each species.
+     * @throws IOException If the change cannot be written.
+     */
+    public static void writeSpecies(DataOutputStream out, String[] names) throws IOException
+    {
+        out.writeInt(SPECIES_CHANGE);
+        writeNames(out, names);
+    }
+
+    /**
+     * Describe how a run was set up.
+     * @param out Where to write it.
+     * @param properties The value of each property, by name.
+     * @throws IOException If the properties cannot be written.
+     */
+    public static void writeProperties(DataOutputStream out, Map<String, String> properties)
+        throws IOException
+    {
+        out.writeInt(PROPERTIES);
+        out.writeInt(properties.size());
+        for(Map.Entry<String, String> property : properties.entrySet()) {
+            out.writeUTF(property.getKey());
+            out.writeUTF(property.getValue());
+        }
+    }
+
+    /**
+     * Write a species count and the name of each species.
+     * @param out Where to write them.
+     * @param names The name of each species.
+     * @throws IOException If the names cannot be written.
+     */
+    private static void writeNames(DataOutputStream out, String[] names) throws IOException
+    {
+        out.writeInt(names.length);
+        for(String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Write one block of steps.
+     * @param out Where to write it.
+     * @param columns The count of each species at each step.
+     * @param first The first step of the block.
+     * @param rows The number of steps in the block. Must be positive.
+     * @throws IOException If the block cannot be written.
+     */
+    public static void writeBlock(DataOutputStream out, int[][] columns, int first, int rows)
+        throws IOException
+    {
+        out.writeInt(rows);
+        for(int[] column : columns) {
+            for(int step = first; step < first + rows; step++) {
+                out.writeInt(column[step]);
+            }
+        }
+    }
+
+    /**
+     * Commit a run.
+     * @param out Where to write it.
+     * @param steps The number of steps in the run.
+     * @throws IOException If the end cannot be written.
+     */
+    public static void writeRunEnd(DataOutputStream out, int steps) throws IOException
+    {
+        out.writeInt(END_OF_RUN);
+        out.writeInt(steps);
+    }
+
+    /**
+     * Mark a run as abandoned, so readers step over it.
+     * @param out Where to write it.
+     * @throws IOException If the mark cannot be written.
+     */
+    public static void writeAbort(DataOutputStream out) throws IOException
+    {
+        out.writeInt(ABORTED);
+    }
+
+    /**
+     * Write the footer.
+     * @param out Where to write it.
+     * @param offsets The offset of each committed run.
+     * @param position The offset the footer is written at.
+     * @throws IOException If the footer cannot be written.
+     */
+    public static void writeFooter(DataOutputStream out, long[] offsets, long position)
+        throws IOException
+    {
+        out.writeInt(FOOTER_MAGIC);
+        out.writeInt(offsets.length);
+        for(long offset : offsets) {
+            out.writeLong(offset);
+        }
+        out.writeLong(position);
+        out.writeInt(FOOTER_MAGIC);
+    }
+
+    /**
+     * Find where each run of a log file starts, from the footer if
+     * there is one, or else by walking the runs.
+     * @param raf The log file.
+     * @return The offset of each whole run.
+     * @throws IOException If the file cannot be read, or is not a log.
+     */
+    public static long[] readIndex(RandomAccessFile raf) throws IOException
+    {
+        if(!checkHeader(raf)) {
+            return new long[0];
+        }
+        long[] offsets = readFooter(raf);
+        if(offsets == null) {
+            List<Long> committed = new ArrayList<Long>();
+            scan(raf, committed);
+            offsets = new long[committed.size()];
+            for(int i = 0; i < offsets.length; i++) {
+                offsets[i] = committed.get(i);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Find where the next run should be written: after the last whole
+     * run, committed or not.
+     * @param raf The log file.
+     * @return The offset after the last whole run, or 0 if the file is empty.
+     * @throws IOException If the file cannot be read, or is not a log.
+     */
+    public static long findEnd(RandomAccessFile raf) throws IOException
+    {
+        if(!checkHeader(raf)) {
+            return 0;
+        }
+        if(readFooter(raf) != null) {
+            raf.seek(raf.length() - TRAILER_SIZE);
+            return raf.readLong();
+        }
+        return scan(raf, new ArrayList<Long>());
+    }
+
+    /**
+     * Check the header of a log file.
+     * @param raf The log file.
+     * @return true if the file has a header, false if it is empty.
+     * @throws IOException If the file cannot be read, or is not a log.
+     */
+    private static boolean checkHeader(RandomAccessFile raf) throws IOException
+    {
+        long length = raf.length();
+        if(length == 0) {
+            return false;
+        }
+        raf.seek(0);
+        if(length < HEADER_SIZE || raf.readInt() != MAGIC) {
+            throw new IOException("Not a binary log");
+        }
+        if(raf.readInt() != VERSION) {
+            throw new IOException("Unknown binary log version");
+        }
+        return true;
+    }
+
+    /**
+     * Read the footer of a log file.
+     * @param raf The log file.
+     * @return The offset of each run, or null if there is no footer.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long[] readFooter(RandomAccessFile raf) throws IOException
+    {
+        long length = raf.length();
+        if(length < HEADER_SIZE + 8 + TRAILER_SIZE) {
+            return null;
+        }
+        raf.seek(length - TRAILER_SIZE);
+        long footer = raf.readLong();
+        if(raf.readInt() != FOOTER_MAGIC || footer < HEADER_SIZE || footer > length - TRAILER_SIZE - 8) {
+            return null;
+        }
+        raf.seek(footer);
+        if(raf.readInt() != FOOTER_MAGIC) {
+            return null;
+        }
+        int runs = raf.readInt();
+        if(runs < 0 || footer + 8 + 8L * runs + TRAILER_SIZE != length) {
+            return null;
+        }
+        long[] offsets = new long[runs];
+        for(int i = 0; i < runs; i++) {
+            offsets[i] = raf.readLong();
+        }
+        return offsets;
+    }
+
+    /**
+     * Find each whole run by walking the records from the start.
+     * @param raf The log file.
+     * @param committed Where to add the offset of each committed run.
+     * @return The offset after the last whole run.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long scan(RandomAccessFile raf, List<Long> committed) throws IOException
+    {
+        long position = HEADER_SIZE;
+        long end;
+        while((end = skipRun(raf, position)) >= 0) {
+            if(isCommitted(raf, end)) {
+                committed.add(position);
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    /**
+     * Check whether a whole run was committed or abandoned.
+     * @param raf The log file.
+     * @param end The offset after the run.
+     * @return true if the run was committed.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isCommitted(RandomAccessFile raf, long end) throws IOException
+    {
+        raf.seek(end - 4);
+        return raf.readInt() != ABORTED;
+    }
+
+    /**
+     * Walk over the run starting at an offset.
+     * @param raf The log file.
+     * @param position The offset of the run.
+     * @return The offset after the run, or -1 if there is no whole run
+     *         there. The run may have been committed or abandoned.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long skipRun(RandomAccessFile raf, long position) throws IOException
+    {
+        long length = raf.length();
+        if(position + 8 > length) {
+            return -1;
+        }
+        raf.seek(position);
+        if(raf.readInt() != RUN_MAGIC) {
+            return -1;
+        }
+        try {
+            int species = skipNames(raf);
+            long total = 0;
+            while(true) {
+                int rows = raf.readInt();
+                if(rows == END_OF_RUN) {
+                    return (raf.readInt() == total) ? raf.getFilePointer() : -1;
+                }
+                else if(rows == ABORTED) {
+                    return raf.getFilePointer();
+                }
+                else if(rows == SPECIES_CHANGE) {
+                    species = skipNames(raf);
+                }
+                else if(rows == PROPERTIES) {
+                    readProperties(raf);
+                }
+                else if(rows == COMPRESSED_BLOCK) {
+                    rows = raf.readInt();
+                    if(rows <= 0) {
+                        return -1;
+                    }
+                    for(int i = 0; i < species; i++) {
+                        int size = raf.readInt();
+                        long next = raf.getFilePointer() + size;
+                        if(size < 0 || next > length) {
+                            return -1;
+                        }
+                        raf.seek(next);
+                    }
+                    total += rows;
+                }
+                else {
+                    long next = raf.getFilePointer() + 4L * rows * species;
+                    if(rows < 0 || next > length) {
+                        return -1;
+                    }
+                    total += rows;
+                    raf.seek(next);
+                }
+            }
+        }
+        catch(IOException e) {
+            // The run was cut short.
+            return -1;
+        }
+    }
+
+    /**
+     * Read the properties describing a run. They are written before
+     * its first block, and runs from earlier versions have none.
+     * @param raf The log file.
+     * @param position The offset of the run.
+     * @return The value of each property, by name.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Map<String, String> readRunProperties(RandomAccessFile raf, long position)
+        throws IOException
+    {
+        raf.seek(position);
+        if(raf.readInt() != RUN_MAGIC) {
+            throw new IOException("No run at " + position);
+        }
+        skipNames(raf);
+        if(raf.readInt() == PROPERTIES) {
+            return readProperties(raf);
+        }
+        return new LinkedHashMap<String, String>();
+    }
+
+    /**
+     * Read a count and the pairs of names and values that follow it.
+     * @param raf The log file, at the count.
+     * @return The value of each property, by name.
+     * @throws IOException If the properties are cut short or damaged.
+     */
+    private static Map<String, String> readProperties(RandomAccessFile raf) throws IOException
+    {
+        int count = raf.readInt();
+        if(count < 0) {
+            throw new IOException("Damaged property count");
+        }
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        for(int i = 0; i < count; i++) {
+            String name = raf.readUTF();
+            properties.put(name, raf.readUTF());
+        }
+        return properties;
+    }
+
+    /**
+     * Return the number of steps in a committed run.
+     * @param raf The log file.
+     * @param end The offset after the run.
+     * @return The number of steps.
+     * @throws IOException If the file cannot be read.
+     */
+    public static int readSteps(RandomAccessFile raf, long end) throws IOException
+    {
+        raf.seek(end - 4);
+        return raf.readInt();
+    }
+
+    /**
+     * Read past a species count and the names that follow it.
+     * @param raf The log file, at the species count.
+     * @return The species count.
+     * @throws IOException If the names are cut short or damaged.
+     */
+    private static int skipNames(RandomAccessFile raf) throws IOException
+    {
+        int species = raf.readInt();
+        if(species < 0) {
+            throw new IOException("Damaged species count");
+        }
+        for(int i = 0; i < species; i++) {
+            raf.readUTF();
+        }
+        return species;
+    }
+
+    /**
+     * Convert a text log, as written by earlier versions, into runs
+     * appended to a binary log. Runs without a finish are dropped.
+     * @param text The text log to read.
+     * @param binary The binary log to append to.
+     * @return The number of runs converted.
+     * @throws IOException If either file cannot be used.
+     */
+    public static int convert(File text, File binary) throws IOException
+    {
+        BufferedReader in = new BufferedReader(new FileReader(text));
+        int runs = 0;
+        try {
+            String[] names = null;
+            int[][] columns = null;
+            int steps = 0;
+            String line;
+            while((line = in.readLine()) != null) {
+                line = line.trim();
+                if(line.equalsIgnoreCase("[start]")) {
+                    names = new String[0];
+                    columns = new int[0][];
+                    steps = 0;
+                }
+                else if(line.equalsIgnoreCase("[finish]")) {
+                    if(names != null) {
+                        appendRun(binary, new LinkedHashMap<String, String>(), names, columns, steps);
+                        runs++;
+                    }
+                    names = null;
+                }
+                else if(names != null && line.length() > 0) {
+                    String[] fields = line.split("\\+");
+                    if(steps == 0) {
+                        names = new String[fields.length];
+                        columns = new int[fields.length][256];
+                    }
+                    else if(fields.length != names.length) {
+                        throw new IOException("Species changed part way through a run in " + text);
+                    }
+                    for(int i = 0; i < fields.length; i++) {
+                        int colon = fields[i].indexOf(':');
+                        names[i] = fields[i].substring(0, colon);
+                        if(steps == columns[i].length) {
+                            columns[i] = Arrays.copyOf(columns[i], steps * 2);
+                        }
+                        columns[i][steps] = Integer.parseInt(fields[i].substring(colon + 1));
+                    }
+                    steps++;
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return runs;
+    }
+
+    /**
+     * Convert a text log to a binary log.
+     * Arguments: text-log binary-log
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File text = new File(args.length > 0 ? args[0] : "Logs.dat");
+        File binary = new File(args.length > 1 ? args[1] : "Logs.bin");
+        int runs = convert(text, binary);
+        System.out.println("Converted " + runs + " runs from " + text + " to " + binary);
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compress and expand the columns of a block of steps.
+ *
+ * Populations change little from one step to the next, so each count
+ * is stored as its difference from the count before it, zig-zag
+ * encoded so small falls are small numbers too, in as few bytes as it
+ * needs. The bytes of each column are then deflated on their own, so
+ * one column can be read without expanding the others.
+ *
+ * A codec keeps its buffers from block to block, so must only be used
+ * by one thread at a time.
+ */
+public class BlockCodec
+{
+    // The most bytes one count can take once encoded.
+    private static final int MAX_VARINT = 5;
+
+    private Deflater deflater;
+    private Inflater inflater;
+    // The encoded column, and the column once deflated or to inflate.
+    private byte[] encoded;
+    private byte[] packed;
+
+    /**
+     * Create a codec.
+     */
+    public BlockCodec()
+    {
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        inflater = new Inflater();
+        encoded = new byte[0];
+        packed = new byte[0];
+    }
+
+    /**
+     * Write one compressed block of steps.
+     * @param out Where to write it.
+     * @param columns The count of each species at each step.
+     * @param first The first step of the block.
+     * @param rows The number of steps in the block. Must be positive.
+     * @throws IOException If the block cannot be written.
+     */
+    public void writeBlock(DataOutputStream out, int[][] columns, int first, int rows)
+        throws IOException
+    {
+        out.writeInt(BinaryLog.COMPRESSED_BLOCK);
+        out.writeInt(rows);
+        for(int[] column : columns) {
+            int length = encode(column, first, rows);
+            deflater.reset();
+            deflater.setInput(encoded, 0, length);
+            deflater.finish();
+            if(packed.length < length + 64) {
+                packed = new byte[length + length / 8 + 64];
+            }
+            int size = 0;
+            while(!deflater.finished()) {
+                if(size == packed.length) {
+                    packed = Arrays.copyOf(packed, packed.length * 2);
+                }
+                size += deflater.deflate(packed, size, packed.length - size);
+            }
+            out.writeInt(size);
+            out.write(packed, 0, size);
+        }
+    }
+
+    /**
+     * Encode part of a column as zig-zag varint differences.
+     * @param column The counts.
+     * @param first The first step to encode.
+     * @param rows The number of steps to encode.
+     * @return The number of bytes in encoded.
+     */
+    private int encode(int[] column, int first, int rows)
+    {
+        if(encoded.length < rows * MAX_VARINT) {
+            encoded = new byte[rows * MAX_VARINT];
+        }
+        int length = 0;
+        int previous = 0;
+        for(int step = first; step < first + rows; step++) {
+            int delta = column[step] - previous;
+            previous = column[step];
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            while((zigzag & ~0x7f) != 0) {
+                encoded[length++] = (byte) ((zigzag & 0x7f) | 0x80);
+                zigzag >>>= 7;
+            }
+            encoded[length++] = (byte) zigzag;
+        }
+        return length;
+    }
+
+    /**
+     * Expand one column of a compressed block.
+     * @param data The log.
+     * @param position Where the deflated column starts.
+     * @param size The number of deflated bytes.
+     * @param rows The number of steps in the block.
+     * @param into Where to put the counts.
+     * @param at The index in into of the block's first step.
+     * @throws IOException If the column is damaged.
+     */
+    public void readColumn(ByteBuffer data, int position, int size, int rows, int[] into, int at)
+        throws IOException
+    {
+        if(packed.length < size) {
+            packed = new byte[size];
+        }
+        if(encoded.length < rows * MAX_VARINT) {
+            encoded = new byte[rows * MAX_VARINT];
+        }
+        ByteBuffer source = data.duplicate();
+        source.position(position);
+        source.get(packed, 0, size);
+        inflater.reset();
+        inflater.setInput(packed, 0, size);
+        int length;
+        try {
+            length = inflater.inflate(encoded);
+        }
+        catch(DataFormatException e) {
+            throw new IOException("Damaged block", e);
+        }
+        int index = 0;
+        int previous = 0;
+        for(int row = 0; row < rows; row++) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if(index >= length) {
+                    throw new IOException("Damaged block");
+                }
+                b = encoded[index++];
+                zigzag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while(b < 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            into[at + row] = previous;
+        }
+    }
+}
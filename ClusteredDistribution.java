@@ -0,0 +1,55 @@
+import java.util.Random;
+
+/**
+ * Gather animals and traps into round clusters scattered at random
+ * over the field. The density falls away from the centre of each
+ * cluster as a Gaussian, and is close to zero between clusters.
+ */
+public class ClusteredDistribution implements SpatialDistribution
+{
+    // The number of clusters.
+    private int clusters;
+    // How far a cluster spreads, in locations.
+    private double spread;
+    // The centre of each cluster.
+    private double[] centreRows, centreCols;
+
+    /**
+     * Create a clustered distribution.
+     * @param clusters The number of clusters. Must be greater than zero.
+     * @param spread The standard deviation of each cluster, in locations.
+     */
+    public ClusteredDistribution(int clusters, double spread)
+    {
+        this.clusters = clusters;
+        this.spread = spread;
+    }
+
+    /**
+     * Choose the centre of each cluster.
+     */
+    public void prepare(int depth, int width, long seed)
+    {
+        Random rand = new Random(seed);
+        centreRows = new double[clusters];
+        centreCols = new double[clusters];
+        for(int i = 0; i < clusters; i++) {
+            centreRows[i] = rand.nextDouble() * depth;
+            centreCols[i] = rand.nextDouble() * width;
+        }
+    }
+
+    /**
+     * @return The density of the nearest cluster at this location.
+     */
+    public double density(int row, int col)
+    {
+        double nearest = Double.MAX_VALUE;
+        for(int i = 0; i < clusters; i++) {
+            double dr = row - centreRows[i];
+            double dc = col - centreCols[i];
+            nearest = Math.min(nearest, dr * dr + dc * dc);
+        }
+        return Math.exp(-nearest / (2 * spread * spread));
+    }
+}
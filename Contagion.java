@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Spread disease between neighbouring animals.
+ * Diseased and healthy animals are marked in packed bitsets, one bit
+ * per location, with each row of the field starting on a fresh 64-bit
+ * word. Every step the diseased bits are smeared onto their eight
+ * neighbours a whole word at a time using shifts and masks, and each
+ * healthy animal found under the smear then catches the disease with
+ * a fixed probability.
+ */
+public class Contagion
+{
+    // The likelihood of a healthy animal next to at least one
+    // diseased animal catching the disease in a single step.
+    private static final double CONTAGION_PROBABILITY = 0.05;
+    // The depth of the field.
+    private int depth;
+    // The simulation's random number generator, to control infection.
+    private Random rand;
+    // The number of words used to store one row.
+    private int words;
+    // The locations holding diseased and healthy animals.
+    private long[] diseased, healthy;
+    // The diseased bits of one row smeared sideways onto their
+    // neighbours, for the rows above, at and below the current one.
+    private long[] above, current, below;
+
+    /**
+     * Create the bitsets for a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param rand The simulation's random number generator.
+     */
+    public Contagion(int depth, int width, Random rand)
+    {
+        this.depth = depth;
+        this.rand = rand;
+        words = (width + 63) >>> 6;
+        diseased = new long[depth * words];
+        healthy = new long[depth * words];
+        above = new long[words];
+        current = new long[words];
+        below = new long[words];
+    }
+
+    /**
+     * Forget every animal marked so far.
+     */
+    public void clear()
+    {
+        Arrays.fill(diseased, 0L);
+        Arrays.fill(healthy, 0L);
+    }
+
+    /**
+     * Record a living animal as either diseased or healthy at its
+     * current location.
+     * @param animal The animal to mark.
+     */
+    public void mark(Animal animal)
+    {
+        Location location = animal.getLocation();
+        if(location != null) {
+            int col = location.getCol();
+            int index = location.getRow() * words + (col >>> 6);
+            long bit = 1L << col;
+            if(animal.isDiseased()) {
+                diseased[index] |= bit;
+            }
+            else {
+                healthy[index] |= bit;
+            }
+        }
+    }
+
+    /**
+     * Infect healthy animals that are next to a diseased one.
+     * Only animals marked since the last clear take part.
+     * @param field The field the animals were marked in.
+     * @return The number of animals newly infected.
+     */
+    public int spread(Field field)
+    {
+        int infected = 0;
+        Arrays.fill(above, 0L);
+        smear(0, current);
+        smear(1, below);
+        for(int row = 0; row < depth; row++) {
+            int base = row * words;
+            for(int w = 0; w < words; w++) {
+                long candidates = (above[w] | current[w] | below[w]) & healthy[base + w];
+                while(candidates != 0) {
+                    int bit = Long.numberOfTrailingZeros(candidates);
+                    candidates &= candidates - 1;
+                    if(rand.nextDouble() <= CONTAGION_PROBABILITY) {
+                        Object occupant = field.getObjectAt(row, (w << 6) + bit);
+                        if(occupant instanceof Animal) {
+                            ((Animal) occupant).setDiseased(true);
+                            infected++;
+                        }
+                    }
+                }
+            }
+            // Move the window of smeared rows down by one.
+            long[] spare = above;
+            above = current;
+            current = below;
+            below = spare;
+            smear(row + 2, below);
+        }
+        return infected;
+    }
+
+    /**
+     * Smear the diseased bits of a row onto the locations either side
+     * of them, keeping the bits themselves. Bits carry across word
+     * boundaries but never across rows.
+     * @param row The row to smear. Rows outside the field are empty.
+     * @param into Where to store the smeared row.
+     */
+    private void smear(int row, long[] into)
+    {
+        if(row >= depth) {
+            Arrays.fill(into, 0L);
+            return;
+        }
+        int base = row * words;
+        long previous = 0L;
+        long word = diseased[base];
+        for(int w = 0; w < words; w++) {
+            long next = (w + 1 < words) ? diseased[base + w + 1] : 0L;
+            long fromLeft = (word << 1) | (previous >>> 63);
+            long fromRight = (word >>> 1) | (next << 63);
+            into[w] = word | fromLeft | fromRight;
+            previous = word;
+            word = next;
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -13,13 +14,22 @@ import java.util.Random;
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
-    
     // The depth and width of the field.
     private int depth, width;
+    // A random number generator for providing random locations.
+    private Random rand;
     // Storage for the animals and objects.
     private Object[][] field;
+    // Whether changed locations are being recorded.
+    private boolean tracking;
+    // Whether every location must be treated as changed.
+    private boolean allChanged;
+    // The locations changed since the changes were last cleared, as
+    // row * width + col, and how many of them there are.
+    private int[] changes;
+    private int changeCount;
+    // One bit per location, set once the location has been recorded.
+    private long[] changed;
 
     /**
      * Represent a field of the given dimensions.
@@ -27,9 +37,23 @@ public class Field
      * @param newWidth The width of the field.
      */
     public Field(int newDepth, int newWidth)
+    {
+        this(newDepth, newWidth, Randomizer.getRandom());
+    }
+    
+    /**
+     * Represent a field of the given dimensions, choosing random
+     * locations with the given random number generator, so that a
+     * simulation seeded with it repeats exactly.
+     * @param newDepth The depth of the field.
+     * @param newWidth The width of the field.
+     * @param random The generator to choose locations with.
+     */
+    public Field(int newDepth, int newWidth, Random random)
     {
         depth = newDepth;
         width = newWidth;
+        rand = random;
         field = new Object[depth][width];
     }
     
@@ -39,9 +63,11 @@ public class Field
     public void clear()
     {
         for(int row = 0; row < depth; row++) {
-            for(int col = 0; col < width; col++) {
-                field[row][col] = null;
-            }
+            Arrays.fill(field[row], null);
+        }
+        if(tracking) {
+            clearChanges();
+            allChanged = true;
         }
     }
     
@@ -52,6 +78,9 @@ public class Field
     public void clear(Location location)
     {
         field[location.getRow()][location.getCol()] = null;
+        if(tracking) {
+            recordChange(location.getRow(), location.getCol());
+        }
     }
     
     /**
@@ -91,6 +120,98 @@ public class Field
     public void place(Object object, Location location)
     {
         field[location.getRow()][location.getCol()] = object;
+        if(tracking) {
+            recordChange(location.getRow(), location.getCol());
+        }
+    }
+    
+    /**
+     * Start or stop recording which locations change. Changes are
+     * only recorded while tracking is on; turning it on treats every
+     * location as changed.
+     * @param on Whether to record changes.
+     */
+    public void setChangeTracking(boolean on)
+    {
+        if(on && !tracking) {
+            changes = new int[64];
+            changed = new long[(depth * width + 63) >>> 6];
+            changeCount = 0;
+            allChanged = true;
+        }
+        else if(!on) {
+            changes = null;
+            changed = null;
+        }
+        tracking = on;
+    }
+    
+    /**
+     * Check whether every location must be treated as changed, as
+     * happens after the whole field is cleared. When this is true
+     * the list of changes is empty.
+     * @return true if every location has changed.
+     */
+    public boolean allChanged()
+    {
+        return allChanged;
+    }
+    
+    /**
+     * Return the locations changed since the changes were last
+     * cleared, each as row * width + col and each listed once.
+     * Only the first getChangeCount() entries are used.
+     * @return The changed locations.
+     */
+    public int[] getChanges()
+    {
+        return changes;
+    }
+    
+    /**
+     * Return how many locations have changed since the changes were
+     * last cleared.
+     * @return The number of changed locations.
+     */
+    public int getChangeCount()
+    {
+        return changeCount;
+    }
+    
+    /**
+     * Forget the changes recorded so far.
+     */
+    public void clearChanges()
+    {
+        // Nothing is marked while every location counts as changed.
+        for(int i = 0; i < changeCount; i++) {
+            changed[changes[i] >>> 6] = 0L;
+        }
+        changeCount = 0;
+        allChanged = false;
+    }
+    
+    /**
+     * Record that a location has changed, unless it already has been.
+     * While every location counts as changed nothing is recorded,
+     * which lets a cleared field be filled from several threads.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     */
+    private void recordChange(int row, int col)
+    {
+        if(allChanged) {
+            return;
+        }
+        int index = row * width + col;
+        long bit = 1L << index;
+        if((changed[index >>> 6] & bit) == 0) {
+            changed[index >>> 6] |= bit;
+            if(changeCount == changes.length) {
+                changes = Arrays.copyOf(changes, changeCount * 2);
+            }
+            changes[changeCount++] = index;
+        }
     }
     
     /**
@@ -166,6 +287,50 @@ public class Field
         }
     }
 
+    /**
+     * Check whether any location adjacent to the given one holds an
+     * object of a given kind. Nothing is allocated, so this is a cheap
+     * test to make before building the shuffled list of neighbours.
+     * @param location The location to look around.
+     * @param kind The kind of object to look for.
+     * @return true if a neighbouring location holds one.
+     */
+    public boolean isNextTo(Location location, Class<?> kind)
+    {
+        int row = location.getRow();
+        int col = location.getCol();
+        for(int nextRow = Math.max(row - 1, 0); nextRow <= Math.min(row + 1, depth - 1); nextRow++) {
+            for(int nextCol = Math.max(col - 1, 0); nextCol <= Math.min(col + 1, width - 1); nextCol++) {
+                if((nextRow != row || nextCol != col) && kind.isInstance(field[nextRow][nextCol])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether any location adjacent to the given one is free,
+     * without building the list of free locations. As there, a trap
+     * counts as free.
+     * @param location The location to look around.
+     * @return true if a neighbouring location is free.
+     */
+    public boolean hasFreeAdjacentLocation(Location location)
+    {
+        int row = location.getRow();
+        int col = location.getCol();
+        for(int nextRow = Math.max(row - 1, 0); nextRow <= Math.min(row + 1, depth - 1); nextRow++) {
+            for(int nextCol = Math.max(col - 1, 0); nextCol <= Math.min(col + 1, width - 1); nextCol++) {
+                Object object = field[nextRow][nextCol];
+                if((nextRow != row || nextCol != col) && (object == null || object instanceof Trap)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Return a shuffled list of locations adjacent to the given one.
      * The list will not include the location itself.
@@ -228,10 +393,9 @@ public class Field
     	Location newLocation = null;
     	if(getLocationsLeft() >= 1){
         	Location location = null;
-        	Randomizer random = new Randomizer();
     	while(newLocation == null){
-    	int startingPointDepth = random.getRandom().nextInt(depth);
-    	int startingPointWidth = random.getRandom().nextInt(width);
+    	int startingPointDepth = rand.nextInt(depth);
+    	int startingPointWidth = rand.nextInt(width);
     	location = new Location(startingPointDepth, startingPointWidth);
     	if(getObjectAt(location) == null){
     		newLocation = location;}
@@ -243,6 +407,48 @@ public class Field
     	return newLocation;
     }
     
+    /**
+     * Return up to count distinct free locations, chosen uniformly at
+     * random, in a single pass over the field. Reservoir sampling is
+     * used, so the free locations never have to be gathered first.
+     * @param count The number of free locations wanted.
+     * @return A list of count free locations, or of every free
+     *         location if there are fewer than count. The list is
+     *         empty if count is not positive.
+     */
+    public List<Location> getRandomFreeLocations(int count)
+    {
+        if(count <= 0) {
+            return new ArrayList<Location>();
+        }
+        // No more can be chosen than there are locations.
+        count = Math.min(count, depth * width);
+        int[] chosen = new int[count];
+        int seen = 0;
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                if(field[row][col] == null) {
+                    if(seen < count) {
+                        chosen[seen] = row * width + col;
+                    }
+                    else {
+                        int slot = rand.nextInt(seen + 1);
+                        if(slot < count) {
+                            chosen[slot] = row * width + col;
+                        }
+                    }
+                    seen++;
+                }
+            }
+        }
+        int found = Math.min(seen, count);
+        List<Location> locations = new ArrayList<Location>(found);
+        for(int i = 0; i < found; i++) {
+            locations.add(new Location(chosen[i] / width, chosen[i] % width));
+        }
+        return locations;
+    }
+    
     /**
      * Return how many free locations are left in the field
      * @return int The number of free locations left in the field
@@ -47,6 +47,34 @@ public class FieldStats
         return buffer.toString();
     }
     
+    /**
+     * Get the number of one class of animal/object in the field.
+     * @param field The field the stats are for.
+     * @param anyClass The class to count.
+     * @return How many there are, or zero if none have been seen.
+     */
+    public int getCount(Field field, Class anyClass)
+    {
+        if(!countsValid) {
+            generateCounts(field);
+        }
+        Counter count = counters.get(anyClass);
+        return count == null ? 0 : count.getCount();
+    }
+    
+    /**
+     * Get every class of animal/object that has been counted.
+     * @param field The field the stats are for.
+     * @return The classes counted.
+     */
+    public Set<Class> getCountedClasses(Field field)
+    {
+        if(!countsValid) {
+            generateCounts(field);
+        }
+        return counters.keySet();
+    }
+    
     /**
      * Invalidate the current set of statistics; reset all 
      * counts to zero.
@@ -76,6 +104,21 @@ public class FieldStats
         count.increment();
     }
 
+    /**
+     * Add to the count for one class of animal.
+     * @param anyClass The class of animal to add to.
+     * @param amount How many to add.
+     */
+    public void incrementCount(Class anyClass, int amount)
+    {
+        Counter count = counters.get(anyClass);
+        if(count == null) {
+            count = new Counter(anyClass.getName());
+            counters.put(anyClass, count);
+        }
+        count.increment(amount);
+    }
+
     /**
      * Indicate that an animal count has been completed.
      */
@@ -28,8 +28,6 @@ public class Fox extends Animal
     // The food value of a single rabbit. In effect, this is the
     // number of steps a fox can go before it has to eat again.
     private static final int RABBIT_FOOD_VALUE = 7;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
     
     // Individual characteristics (instance fields).
     // The fox's age.
@@ -47,10 +45,25 @@ public class Fox extends Animal
      */
     public Fox(boolean randomAge, Field field, Location location)
     {
-        super(field, location);
+        this(randomAge, field, location, Randomizer.getRandom());
+    }
+    
+    /**
+     * Create a fox, choosing its gender and any random age and food
+     * level with the given random number generator, so that a world
+     * made from a seed is always the same.
+     * 
+     * @param randomAge If true, the fox will have random age and hunger level.
+     * @param field The field currently occupied.
+     * @param location The location within the field.
+     * @param random The generator to choose with.
+     */
+    public Fox(boolean randomAge, Field field, Location location, Random random)
+    {
+        super(field, location, random);
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
-            foodLevel = rand.nextInt(RABBIT_FOOD_VALUE);
+            age = random.nextInt(MAX_AGE);
+            foodLevel = random.nextInt(RABBIT_FOOD_VALUE);
         }
         else {
             age = 0;
@@ -63,16 +76,20 @@ public class Fox extends Animal
      * rabbits. In the process, it might breed, die of hunger,
      * or die of old age.
      * @param newFoxes A list to add newly born foxes to.
+     * @param rand The simulation's random number generator.
+     * @return true if the fox ate a rabbit.
      */
-    public void act(List<Animal> newFoxes)
+    public boolean act(List<Fox> newFoxes, Random rand)
     {
+        boolean ate = false;
         incrementAge();
         incrementHunger();
         if(isAlive()) {
-            giveBirth(newFoxes);
+            giveBirth(newFoxes, rand);
             // Move towards a source of food if found.
             Location location = getLocation();
             Location newLocation = findFood(location);
+            ate = newLocation != null;
             if(newLocation == null) {
                 // No food found - try to move to a free location.
                 newLocation = getField().freeAdjacentLocation(location);
@@ -86,6 +103,7 @@ public class Fox extends Animal
                 setDead();
             }
         }
+        return ate;
     }
 
     /**
@@ -121,6 +139,11 @@ public class Fox extends Animal
     private Location findFood(Location location)
     {
         Field field = getField();
+        // Most foxes have no rabbit beside them, so check before
+        // building the shuffled list of neighbours.
+        if(!field.isNextTo(location, Rabbit.class)) {
+            return null;
+        }
         List<Location> adjacent = field.adjacentLocations(getLocation());
         Iterator<Location> it = adjacent.iterator();
         while(it.hasNext()) {
@@ -143,8 +166,9 @@ public class Fox extends Animal
      * Check whether or not this fox is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newFoxes A list to add newly born foxes to.
+     * @param rand The simulation's random number generator.
      */
-    private void giveBirth(List<Animal> newFoxes)
+    private void giveBirth(List<Fox> newFoxes, Random rand)
     {
     	if(getGender() == 'F')
     	{
@@ -152,10 +176,10 @@ public class Fox extends Animal
 	        // Get a list of adjacent free locations.
 	        Field field = getField();
 	        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-	        int births = breed();
+	        int births = breed(rand);
 	        for(int b = 0; b < births && free.size() > 0; b++) {
 	            Location loc = free.remove(0);
-	            Fox young = new Fox(false, field, loc);
+	            Fox young = new Fox(false, field, loc, rand);
 	    		if(diseased() && rand.nextDouble() <= DISEASED_INHERITANCE_RATE)
 	    		{
 	    			young.setDiseased(true);
@@ -168,9 +192,10 @@ public class Fox extends Animal
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param rand The simulation's random number generator.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(Random rand)
     {
         int births = 0;
         if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
@@ -0,0 +1,499 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Export the steps of a simulation as images, without needing a
+ * display. Frames are written either as a numbered sequence of PNG
+ * files or as one file of uncompressed PPM frames one after another,
+ * which a video encoder can read directly, for example with
+ * "ffmpeg -f image2pipe -c:v ppm -i frames.ppm movie.mp4".
+ *
+ * The simulation thread only copies the field into a small buffer of
+ * colour indices; a pool of worker threads does the drawing and
+ * encoding. There are a fixed number of buffers, and once they are
+ * all waiting to be encoded the simulation waits for one to be freed,
+ * so memory stays the same however far the encoders fall behind.
+ */
+public class FrameExporter
+{
+    // The formats frames can be written in.
+    public static final int PNG = 0;
+    public static final int PPM = 1;
+    // The most classes that can be given a colour.
+    private static final int PALETTE_SIZE = 256;
+    // Colour used for empty positions.
+    private static final Color EMPTY_COLOR = Color.white;
+    // Colour used for objects that have no defined colour.
+    private static final Color UNKNOWN_COLOR = Color.gray;
+
+    // Where the frames are written.
+    private File directory;
+    // One of PNG or PPM.
+    private int format;
+    // The width and height in pixels of one location.
+    private int scale;
+    // The classes given a colour, and the RGB value of each. Entry 0
+    // is empty and the last entry is for unknown classes.
+    private Class<?>[] paletteClasses;
+    private int[] paletteRGB;
+    private int paletteSize;
+    // The threads that encode frames.
+    private ExecutorService workers;
+    // The frame buffers not in use.
+    private BlockingQueue<Frame> free;
+    // The number of frame buffers.
+    private int buffers;
+    // The number of frames captured so far.
+    private int captured;
+    // The file PPM frames are written to, the next frame due to be
+    // written to it, and the lock guarding both.
+    private OutputStream out;
+    private int nextToWrite;
+    private final Object writeLock = new Object();
+    // The first error met while writing, if any.
+    private volatile IOException error;
+
+    /**
+     * Create an exporter.
+     * @param directory The directory to write frames into. It is
+     *                  created if it does not exist.
+     * @param format Either PNG or PPM.
+     * @param scale The width and height in pixels of one location.
+     * @param threads The number of threads to encode frames on.
+     * @param buffers The most frames that can wait to be encoded.
+     * @throws IOException If the directory or the PPM file cannot be created.
+     */
+    public FrameExporter(File directory, int format, int scale, int threads, int buffers)
+        throws IOException
+    {
+        if(format != PNG && format != PPM) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        if(scale < 1 || threads < 1 || buffers < 1) {
+            throw new IllegalArgumentException("Scale, threads and buffers must be positive.");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.format = format;
+        this.scale = scale;
+        this.buffers = buffers;
+        paletteClasses = new Class<?>[PALETTE_SIZE];
+        paletteRGB = new int[PALETTE_SIZE];
+        paletteRGB[0] = EMPTY_COLOR.getRGB();
+        paletteSize = 1;
+        free = new ArrayBlockingQueue<Frame>(buffers);
+        for(int i = 0; i < buffers; i++) {
+            free.add(new Frame());
+        }
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Frame encoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if(format == PPM) {
+            out = new BufferedOutputStream(new FileOutputStream(new File(directory, "frames.ppm")), 1 << 16);
+        }
+    }
+
+    /**
+     * Define a colour to be used for a given class. This must be done
+     * before the first frame is captured.
+     * @param animalClass The animal's Class object.
+     * @param color The colour to be used for the given class.
+     */
+    public void setColor(Class<?> animalClass, Color color)
+    {
+        for(int i = 1; i < paletteSize; i++) {
+            if(paletteClasses[i] == animalClass) {
+                paletteRGB[i] = color.getRGB();
+                return;
+            }
+        }
+        if(paletteSize == PALETTE_SIZE - 1) {
+            throw new IllegalStateException("Too many classes to colour.");
+        }
+        paletteClasses[paletteSize] = animalClass;
+        paletteRGB[paletteSize] = color.getRGB();
+        paletteSize++;
+        paletteRGB[paletteSize] = UNKNOWN_COLOR.getRGB();
+    }
+
+    /**
+     * Capture the field as the next frame. This waits if every frame
+     * buffer is still waiting to be encoded.
+     * @param step The step the field is at.
+     * @param field The field to capture.
+     */
+    public void capture(int step, Field field)
+    {
+        Frame frame;
+        try {
+            frame = free.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        frame.snapshot(captured++, step, field);
+        workers.execute(frame);
+    }
+
+    /**
+     * Return the index of the colour for an object.
+     * @param object The object at a location, or null.
+     * @param classes The classes given a colour, from index 1.
+     * @param size The index after the last class.
+     * @return Its index in the palette: 0 if empty, size if unknown.
+     */
+    private static byte paletteIndex(Object object, Class<?>[] classes, int size)
+    {
+        if(object == null) {
+            return 0;
+        }
+        Class<?> objectClass = object.getClass();
+        for(int i = 1; i < size; i++) {
+            if(classes[i] == objectClass) {
+                return (byte) i;
+            }
+        }
+        return (byte) size;
+    }
+
+    /**
+     * Draw a field into a new image on the calling thread, in the same
+     * colours as frames are drawn in. Used for single pictures, which
+     * need no workers or buffers.
+     * @param field The field to draw.
+     * @param classes The classes to colour.
+     * @param colors The colour of each class.
+     * @param scale The width and height in pixels of one location.
+     * @return The image.
+     */
+    public static BufferedImage render(Field field, Class<?>[] classes, Color[] colors, int scale)
+    {
+        int size = classes.length + 1;
+        if(size >= PALETTE_SIZE) {
+            throw new IllegalArgumentException("Too many classes to colour.");
+        }
+        Class<?>[] palette = new Class<?>[size];
+        int[] rgb = new int[size + 1];
+        rgb[0] = EMPTY_COLOR.getRGB();
+        for(int i = 0; i < classes.length; i++) {
+            palette[i + 1] = classes[i];
+            rgb[i + 1] = colors[i].getRGB();
+        }
+        rgb[size] = UNKNOWN_COLOR.getRGB();
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        byte[] entries = new byte[depth * width];
+        int index = 0;
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                entries[index++] = paletteIndex(field.getObjectAt(row, col), palette, size);
+            }
+        }
+        BufferedImage image = new BufferedImage(width * scale, depth * scale, BufferedImage.TYPE_INT_RGB);
+        draw(entries, depth, width, rgb, scale, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        return image;
+    }
+
+    /**
+     * Draw colour indices into pixels, each location as a square of
+     * scale by scale pixels.
+     * @param entries The colour index of each location, row by row.
+     * @param depth The number of rows.
+     * @param width The number of locations in a row.
+     * @param palette The RGB value of each colour index.
+     * @param scale The width and height in pixels of one location.
+     * @param pixels The pixels of an image width * scale wide and
+     *               depth * scale high.
+     */
+    private static void draw(byte[] entries, int depth, int width, int[] palette,
+                             int scale, int[] pixels)
+    {
+        int imageWidth = width * scale;
+        int index = 0;
+        for(int row = 0; row < depth; row++) {
+            int line = row * scale * imageWidth;
+            int pixel = line;
+            for(int col = 0; col < width; col++) {
+                int rgb = palette[entries[index++] & 0xff];
+                for(int i = 0; i < scale; i++) {
+                    pixels[pixel++] = rgb;
+                }
+            }
+            // The other lines of the row are copies of the first.
+            for(int i = 1; i < scale; i++) {
+                System.arraycopy(pixels, line, pixels, line + i * imageWidth, imageWidth);
+            }
+        }
+    }
+
+    /**
+     * Wait for every frame captured to be written, then release the
+     * worker threads and close the output.
+     * @throws IOException If any frame could not be written.
+     */
+    public void close() throws IOException
+    {
+        try {
+            // Every buffer is back once every frame has been written.
+            for(int i = 0; i < buffers; i++) {
+                free.take();
+            }
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(out != null) {
+            out.close();
+        }
+        if(error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Return the number of frames captured so far.
+     * @return The number of frames captured.
+     */
+    public int getFrameCount()
+    {
+        return captured;
+    }
+
+    /**
+     * One frame buffer: the colour index of each location, and the
+     * pixels it is drawn into. Buffers are reused from frame to frame.
+     */
+    private class Frame implements Runnable
+    {
+        private int sequence, step;
+        private int depth, width;
+        private byte[] entries = new byte[0];
+        private BufferedImage image;
+        private int[] pixels;
+        private byte[] ppm;
+
+        /**
+         * Copy the colour of each location of the field.
+         * @param sequence The position of this frame in the output.
+         * @param step The step the field is at.
+         * @param field The field to copy.
+         */
+        public void snapshot(int sequence, int step, Field field)
+        {
+            this.sequence = sequence;
+            this.step = step;
+            depth = field.getDepth();
+            width = field.getWidth();
+            if(entries.length != depth * width) {
+                entries = new byte[depth * width];
+            }
+            int index = 0;
+            for(int row = 0; row < depth; row++) {
+                for(int col = 0; col < width; col++) {
+                    entries[index++] = paletteIndex(field.getObjectAt(row, col),
+                                                    paletteClasses, paletteSize);
+                }
+            }
+        }
+
+        /**
+         * Draw, encode and write the frame, then hand the buffer back.
+         * If anything goes wrong, the error is recorded and the frame
+         * is skipped. A PPM frame always gives up its place in the
+         * file, whether or not it was written, so that later frames
+         * never wait for it.
+         */
+        public void run()
+        {
+            boolean placed = false;
+            boolean written = false;
+            try {
+                draw();
+                if(format == PNG) {
+                    File file = new File(directory, String.format("frame-%06d.png", sequence));
+                    if(!ImageIO.write(image, "png", file)) {
+                        throw new IOException("No PNG writer available");
+                    }
+                }
+                else {
+                    byte[] header = encode();
+                    placed = true;
+                    writeInOrder(header);
+                }
+                written = true;
+            }
+            catch(IOException e) {
+                fail(e);
+            }
+            catch(RuntimeException e) {
+                fail(new IOException(e));
+            }
+            finally {
+                if(!written) {
+                    // Only the first error is kept, so this is only
+                    // recorded if the frame failed with an Error.
+                    fail(new IOException("Frame of step " + step + " not written"));
+                }
+                if(format == PPM && !placed) {
+                    skipInOrder();
+                }
+                free.add(this);
+            }
+        }
+
+        /**
+         * Record the first error met.
+         * @param e The error.
+         */
+        private void fail(IOException e)
+        {
+            if(error == null) {
+                error = e;
+                System.out.println("Error writing frame " + step + "\n" + e);
+            }
+        }
+
+        /**
+         * Draw the frame into the image, each location as a square of
+         * scale by scale pixels.
+         */
+        private void draw()
+        {
+            int imageWidth = width * scale;
+            int imageHeight = depth * scale;
+            if(image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+                image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            }
+            FrameExporter.draw(entries, depth, width, paletteRGB, scale, pixels);
+        }
+
+        /**
+         * Convert the image to PPM pixels.
+         * @return The PPM header of the frame.
+         * @throws IOException If the header cannot be encoded.
+         */
+        private byte[] encode() throws IOException
+        {
+            byte[] header = ("P6\n" + image.getWidth() + " " + image.getHeight() + "\n255\n").getBytes("US-ASCII");
+            int size = pixels.length * 3;
+            if(ppm == null || ppm.length != size) {
+                ppm = new byte[size];
+            }
+            int at = 0;
+            for(int rgb : pixels) {
+                ppm[at++] = (byte) (rgb >> 16);
+                ppm[at++] = (byte) (rgb >> 8);
+                ppm[at++] = (byte) rgb;
+            }
+            return header;
+        }
+
+        /**
+         * Append the frame to the PPM file once every earlier frame has
+         * been written or skipped. Earlier frames were queued first, so
+         * are always being encoded by another worker while this one
+         * waits. The next frame's turn comes however this ends.
+         * @param header The PPM header of the frame.
+         * @throws IOException If the frame cannot be written.
+         */
+        private void writeInOrder(byte[] header) throws IOException
+        {
+            synchronized(writeLock) {
+                awaitTurn();
+                try {
+                    out.write(header);
+                    out.write(ppm);
+                }
+                finally {
+                    nextToWrite++;
+                    writeLock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Give up the frame's place in the PPM file without writing it,
+         * once every earlier frame has been written or skipped.
+         */
+        private void skipInOrder()
+        {
+            synchronized(writeLock) {
+                awaitTurn();
+                nextToWrite++;
+                writeLock.notifyAll();
+            }
+        }
+
+        /**
+         * Wait, holding writeLock, until this frame is next to be
+         * written. An interrupt does not stop the wait, as every later
+         * frame depends on this one taking its turn; it is passed on
+         * once the wait is over.
+         */
+        private void awaitTurn()
+        {
+            boolean interrupted = false;
+            while(nextToWrite != sequence) {
+                try {
+                    writeLock.wait();
+                }
+                catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Run a simulation with no display and export every step.
+     * Arguments: depth width steps directory [png|ppm] [scale]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 4) {
+            System.out.println("Usage: java FrameExporter depth width steps directory [png|ppm] [scale]");
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int steps = Integer.parseInt(args[2]);
+        int format = (args.length > 4 && args[4].equalsIgnoreCase("ppm")) ? PPM : PNG;
+        int scale = (args.length > 5) ? Integer.parseInt(args[5]) : 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        FrameExporter exporter = new FrameExporter(new File(args[3]), format, scale,
+                                                   threads, 2 * threads);
+        Simulator simulator = new Simulator(depth, width, true);
+        simulator.setExporter(exporter);
+        simulator.simulate(steps);
+        exporter.close();
+        System.out.println("Wrote " + exporter.getFrameCount() + " frames to " + args[3]);
+    }
+}
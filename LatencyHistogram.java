@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, which any number of threads
+ * can record into and read from without locking.
+ *
+ * Durations are counted in buckets whose width grows with the
+ * duration, so that each bucket is within about 3% of the durations
+ * counted in it however long they are. Small durations are counted
+ * exactly. Durations longer than about 18 minutes are counted as if
+ * they were that long.
+ */
+public class LatencyHistogram
+{
+    // The number of bits of a duration kept exactly. Each doubling of
+    // duration above 1 << SUB_BITS is split into HALF buckets.
+    private static final int SUB_BITS = 6;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    // The longest duration told apart from longer ones.
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    // The number of buckets needed to count up to MAX_VALUE.
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    // The number of durations in each bucket.
+    private AtomicLongArray counts;
+    // The number, sum and longest of the durations recorded.
+    private AtomicLong count;
+    private AtomicLong total;
+    private AtomicLong max;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        total = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Count one duration.
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long longest = max.get();
+        while(value > longest && !max.compareAndSet(longest, value)) {
+            longest = max.get();
+        }
+    }
+
+    /**
+     * Find the bucket a duration is counted in.
+     * @param value The duration, between 0 and MAX_VALUE.
+     * @return The index of its bucket.
+     */
+    private static int indexOf(long value)
+    {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        int mantissa = (int) (value >>> shift);
+        return (shift == 0) ? mantissa : shift * HALF + mantissa;
+    }
+
+    /**
+     * Find the longest duration counted in a bucket.
+     * @param index The index of the bucket.
+     * @return The longest duration it counts.
+     */
+    private static long highestIn(int index)
+    {
+        if(index < 2 * HALF) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long mantissa = index - shift * HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * @return The mean duration in nanoseconds, or 0 if none were recorded.
+     */
+    public double getMean()
+    {
+        long recorded = count.get();
+        return (recorded == 0) ? 0 : (double) total.get() / recorded;
+    }
+
+    /**
+     * @return The longest duration in nanoseconds.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Find a duration that a given share of the durations recorded
+     * were no longer than. Durations being recorded at the same time
+     * may or may not be included.
+     * @param percentile The share, from 0 to 100.
+     * @return The duration in nanoseconds, or 0 if none were recorded.
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKETS];
+        long recorded = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            recorded += snapshot[i];
+        }
+        if(recorded == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= wanted) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forget every duration recorded.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
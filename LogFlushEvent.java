@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the log writer writing out a batch of
+ * blocks and flushing it to its segment.
+ */
+@Name("foxesandrabbits.LogFlush")
+@Label("Log Flush")
+@Category("Foxes and Rabbits")
+@StackTrace(false)
+@Description("A batch of log entries written and flushed")
+public class LogFlushEvent extends jdk.jfr.Event
+{
+    @Label("Segment")
+    public String segment;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Runs Committed")
+    public int committed;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytes;
+}
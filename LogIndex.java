@@ -0,0 +1,371 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An index of the committed runs in a binary log, kept in a file
+ * beside it. For each run it holds where the run starts, how many
+ * steps it has and the size of its field, so runs can be counted and
+ * filtered without touching the log itself.
+ *
+ * The log only ever grows at its end, so an index can be brought up
+ * to date by reading just the runs added after the part it covers.
+ * Only the header and end of each new run are read, and only the new
+ * runs are added to the index file.
+ */
+public class LogIndex
+{
+    // Marks the start of an index file, and the version of its format.
+    private static final int MAGIC = 0x4c494458;
+    private static final int VERSION = 1;
+    // The size of the header of an index file, and of each run in it.
+    private static final int HEADER_SIZE = 20;
+    private static final int RUN_SIZE = 32;
+
+    // The log indexed, and the file the index is kept in.
+    private File log;
+    private File indexFile;
+    // How much of the log has been indexed: the offset after the last
+    // whole run.
+    private long covered;
+    // The number of committed runs, and how many of them are in the
+    // index file, or -1 if it must be written again in full.
+    private int runs;
+    private int savedRuns = -1;
+    // For each run: where it starts, its steps, its field and its seed.
+    private long[] offsets;
+    private int[] steps;
+    private int[] depths;
+    private int[] widths;
+    private long[] seeds;
+
+    /**
+     * Open the index of a log, building or updating it if needed.
+     * @param log The log file.
+     * @throws IOException If the log cannot be read.
+     */
+    public LogIndex(File log) throws IOException
+    {
+        this.log = log;
+        indexFile = new File(log.getPath() + ".idx");
+        offsets = new long[16];
+        steps = new int[16];
+        depths = new int[16];
+        widths = new int[16];
+        seeds = new long[16];
+        load();
+        refresh();
+    }
+
+    /**
+     * Read any runs added to the log since it was last indexed, and
+     * save the index if it changed.
+     * @return true if new runs were found.
+     * @throws IOException If the log cannot be read.
+     */
+    public boolean refresh() throws IOException
+    {
+        if(!log.exists()) {
+            return false;
+        }
+        int before = runs;
+        long coveredBefore = covered;
+        RandomAccessFile raf = new RandomAccessFile(log, "r");
+        try {
+            if(covered > 0 && !stillValid(raf)) {
+                // The log has been replaced, so start again.
+                runs = 0;
+                covered = 0;
+                savedRuns = -1;
+            }
+            if(covered == 0) {
+                if(BinaryLog.findEnd(raf) == 0) {
+                    return false;
+                }
+                covered = BinaryLog.HEADER_SIZE;
+            }
+            long end;
+            while((end = BinaryLog.skipRun(raf, covered)) >= 0) {
+                if(BinaryLog.isCommitted(raf, end)) {
+                    add(raf, covered, end);
+                }
+                covered = end;
+            }
+        }
+        finally {
+            raf.close();
+        }
+        if(covered != coveredBefore) {
+            save();
+        }
+        return runs != before;
+    }
+
+    /**
+     * Check that the log still holds the runs indexed, by walking the
+     * last of them.
+     * @param raf The log file.
+     * @return true if the index still describes the log.
+     */
+    private boolean stillValid(RandomAccessFile raf) throws IOException
+    {
+        if(raf.length() < covered) {
+            return false;
+        }
+        if(runs == 0) {
+            return BinaryLog.findEnd(raf) >= covered;
+        }
+        long end = BinaryLog.skipRun(raf, offsets[runs - 1]);
+        return end > 0 && end <= covered && BinaryLog.readSteps(raf, end) == steps[runs - 1];
+    }
+
+    /**
+     * Add a committed run to the index.
+     * @param raf The log file.
+     * @param offset Where the run starts.
+     * @param end The offset after the run.
+     */
+    private void add(RandomAccessFile raf, long offset, long end) throws IOException
+    {
+        if(runs == offsets.length) {
+            int size = runs * 2;
+            offsets = Arrays.copyOf(offsets, size);
+            steps = Arrays.copyOf(steps, size);
+            depths = Arrays.copyOf(depths, size);
+            widths = Arrays.copyOf(widths, size);
+            seeds = Arrays.copyOf(seeds, size);
+        }
+        Map<String, String> properties = BinaryLog.readRunProperties(raf, offset);
+        offsets[runs] = offset;
+        steps[runs] = BinaryLog.readSteps(raf, end);
+        depths[runs] = parseInt(properties.get("depth"));
+        widths[runs] = parseInt(properties.get("width"));
+        seeds[runs] = properties.containsKey("seed") ? Long.parseLong(properties.get("seed")) : 0;
+        runs++;
+    }
+
+    /**
+     * @param value A number, or null.
+     * @return The number, or 0 if the value was null.
+     */
+    private static int parseInt(String value)
+    {
+        return (value == null) ? 0 : Integer.parseInt(value);
+    }
+
+    /**
+     * Read the saved index, if there is one. A damaged index is
+     * ignored and rebuilt.
+     */
+    private void load()
+    {
+        if(!indexFile.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), 1 << 16));
+            try {
+                if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return;
+                }
+                long savedCovered = in.readLong();
+                int savedRuns = in.readInt();
+                long[] savedOffsets = new long[Math.max(savedRuns, 16)];
+                int[] savedSteps = new int[savedOffsets.length];
+                int[] savedDepths = new int[savedOffsets.length];
+                int[] savedWidths = new int[savedOffsets.length];
+                long[] savedSeeds = new long[savedOffsets.length];
+                for(int i = 0; i < savedRuns; i++) {
+                    savedOffsets[i] = in.readLong();
+                    savedSteps[i] = in.readInt();
+                    savedDepths[i] = in.readInt();
+                    savedWidths[i] = in.readInt();
+                    savedSeeds[i] = in.readLong();
+                }
+                covered = savedCovered;
+                runs = savedRuns;
+                this.savedRuns = savedRuns;
+                offsets = savedOffsets;
+                steps = savedSteps;
+                depths = savedDepths;
+                widths = savedWidths;
+                seeds = savedSeeds;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch(IOException e) {
+            // Build the index again from the log.
+        }
+    }
+
+    /**
+     * Save the index. Runs added since it was last saved are written
+     * after those already in the file, and then the header is updated
+     * to count them, so a saved index is never read back in part.
+     * Otherwise the whole index is written to a new file which then
+     * replaces the old one.
+     */
+    private void save()
+    {
+        try {
+            if(savedRuns >= 0 && indexFile.exists()) {
+                append();
+            }
+            else {
+                rewrite();
+            }
+            savedRuns = runs;
+        }
+        catch(IOException e) {
+            System.out.println("Error writing log index \n" + e);
+            savedRuns = -1;
+        }
+    }
+
+    /**
+     * Add the runs not yet saved to the end of the index file.
+     */
+    private void append() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for(int i = savedRuns; i < runs; i++) {
+                writeRun(out, i);
+            }
+            long end = HEADER_SIZE + (long) savedRuns * RUN_SIZE;
+            raf.seek(end);
+            raf.write(bytes.toByteArray());
+            raf.setLength(end + bytes.size());
+            raf.seek(8);
+            raf.writeLong(covered);
+            raf.writeInt(runs);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write the whole index, replacing the old one only once the new
+     * one has been written in full.
+     */
+    private void rewrite() throws IOException
+    {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(covered);
+            out.writeInt(runs);
+            for(int i = 0; i < runs; i++) {
+                writeRun(out, i);
+            }
+        }
+        finally {
+            out.close();
+        }
+        if(!temp.renameTo(indexFile)) {
+            indexFile.delete();
+            temp.renameTo(indexFile);
+        }
+    }
+
+    /**
+     * Write the entry of one run.
+     * @param out Where to write it.
+     * @param i The index of the run.
+     */
+    private void writeRun(DataOutputStream out, int i) throws IOException
+    {
+        out.writeLong(offsets[i]);
+        out.writeInt(steps[i]);
+        out.writeInt(depths[i]);
+        out.writeInt(widths[i]);
+        out.writeLong(seeds[i]);
+    }
+
+    /**
+     * @return The number of committed runs.
+     */
+    public int getRunCount()
+    {
+        return runs;
+    }
+
+    /**
+     * @return The offset of each committed run, in a new array.
+     */
+    public long[] getOffsets()
+    {
+        return Arrays.copyOf(offsets, runs);
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return The number of steps in the run.
+     */
+    public int getSteps(int run)
+    {
+        return steps[run];
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return The depth of the run's field, or 0 if not recorded.
+     */
+    public int getDepth(int run)
+    {
+        return depths[run];
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return The width of the run's field, or 0 if not recorded.
+     */
+    public int getWidth(int run)
+    {
+        return widths[run];
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return The seed of the run's world, or 0 if not recorded.
+     */
+    public long getSeed(int run)
+    {
+        return seeds[run];
+    }
+
+    /**
+     * Read how a run was set up from its header in the log.
+     * @param run The index of a run.
+     * @return The value of each property, by name.
+     * @throws IOException If the log cannot be read.
+     */
+    public Map<String, String> getProperties(int run) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(log, "r");
+        try {
+            return BinaryLog.readRunProperties(raf, offsets[run]);
+        }
+        finally {
+            raf.close();
+        }
+    }
+}
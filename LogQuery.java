@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A question about the runs in a log store, such as "runs where the
+ * foxes died out before step 200", answered from the run summaries.
+ *
+ * A query is built from filters, each of which a run must pass to be
+ * chosen. For example:
+ *
+ *     new LogQuery(store).where(LogQuery.onField(80, 80))
+ *                        .where(LogQuery.startingAbove("trap", 40))
+ *                        .find();
+ *
+ * Only the summaries are read, so a query over runs already summarised
+ * never touches their counts.
+ */
+public class LogQuery
+{
+    // The runs asked about.
+    private LogStore store;
+    // The filters a run must pass.
+    private List<RunFilter> filters;
+
+    /**
+     * Start a query that chooses every run of a store.
+     * @param store The runs to ask about.
+     */
+    public LogQuery(LogStore store)
+    {
+        this.store = store;
+        filters = new ArrayList<RunFilter>();
+    }
+
+    /**
+     * Only choose runs that pass a filter as well.
+     * @param filter The filter.
+     * @return This query.
+     */
+    public LogQuery where(RunFilter filter)
+    {
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * @return The number of each run chosen, oldest first.
+     * @throws IOException If the runs cannot be read.
+     */
+    public int[] find() throws IOException
+    {
+        int runs = store.getRunCount();
+        int[] found = new int[runs];
+        int count = 0;
+        for(int run = 0; run < runs; run++) {
+            if(accept(store.getSummary(run))) {
+                found[count++] = run;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return The number of runs chosen.
+     * @throws IOException If the runs cannot be read.
+     */
+    public int count() throws IOException
+    {
+        return find().length;
+    }
+
+    /**
+     * @param run The summary of a run.
+     * @return true if the run passes every filter.
+     */
+    private boolean accept(RunSummary run)
+    {
+        for(RunFilter filter : filters) {
+            if(!filter.accept(run)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param species The name of a species.
+     * @param step A step.
+     * @return A filter choosing runs where the species died out before
+     *         the step.
+     */
+    public static RunFilter extinctBefore(final String species, final int step)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                int extinct = run.getExtinctionStep(species);
+                return run.hasSpecies(species) && extinct >= 0 && extinct < step;
+            }
+        };
+    }
+
+    /**
+     * @param species The name of a species.
+     * @return A filter choosing runs the species survived.
+     */
+    public static RunFilter survived(final String species)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                return run.hasSpecies(species) && run.getExtinctionStep(species) < 0;
+            }
+        };
+    }
+
+    /**
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @return A filter choosing runs on a field of that size.
+     */
+    public static RunFilter onField(final int depth, final int width)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                return run.getDepth() == depth && run.getWidth() == width;
+            }
+        };
+    }
+
+    /**
+     * @param species The name of a species.
+     * @param count A count.
+     * @return A filter choosing runs that started with more of the
+     *         species than the count.
+     */
+    public static RunFilter startingAbove(final String species, final int count)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                return run.getFirst(species) > count;
+            }
+        };
+    }
+
+    /**
+     * @param species The name of a species.
+     * @param count A count.
+     * @return A filter choosing runs where the species rose above the
+     *         count at some step.
+     */
+    public static RunFilter peakAbove(final String species, final int count)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                return run.getMaximum(species) > count;
+            }
+        };
+    }
+
+    /**
+     * @param steps A number of steps.
+     * @return A filter choosing runs of at least that many steps.
+     */
+    public static RunFilter lastingAtLeast(final int steps)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                return run.getSteps() >= steps;
+            }
+        };
+    }
+
+    /**
+     * @param name The name of a property, such as "distribution".
+     * @param value A value.
+     * @return A filter choosing runs set up with the property at that
+     *         value.
+     */
+    public static RunFilter withProperty(final String name, final String value)
+    {
+        return new RunFilter() {
+            public boolean accept(RunSummary run)
+            {
+                return value.equals(run.getProperty(name));
+            }
+        };
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read the runs of a binary log. The log is memory mapped a large
+ * region at a time as runs are first used, so opening a log only reads
+ * its footer, and a column is copied out of the mapping in bulk rather
+ * than a number at a time. The headers of recently used runs are kept,
+ * so memory stays the same however many runs the log holds.
+ */
+public class LogReader implements RunSource
+{
+    // The size of the regions the log is mapped in.
+    private static final int REGION_SIZE = 1 << 28;
+    // The number of run headers kept.
+    private static final int CACHE_SIZE = 256;
+    // A codec for each thread reading compressed blocks.
+    private static final ThreadLocal<BlockCodec> codecs = new ThreadLocal<BlockCodec>() {
+        protected BlockCodec initialValue()
+        {
+            return new BlockCodec();
+        }
+    };
+
+    // The log file.
+    private RandomAccessFile raf;
+    // The offset of each run.
+    private long[] offsets;
+    // The region of the log mapped last, and where it starts.
+    private ByteBuffer region;
+    private long regionStart;
+    // Recently used runs, each kept in the slot of its index modulo
+    // the cache size, and the index of the run in each slot.
+    private Run[] cache;
+    private int[] cached;
+
+    /**
+     * Open a binary log.
+     * @param file The log file.
+     * @throws IOException If the file cannot be read, or is not a log.
+     */
+    public LogReader(File file) throws IOException
+    {
+        raf = new RandomAccessFile(file, "r");
+        offsets = BinaryLog.readIndex(raf);
+        createCache();
+    }
+
+    /**
+     * Open a binary log whose runs have already been found.
+     * @param file The log file.
+     * @param offsets The offset of each run to read.
+     * @throws IOException If the file cannot be read.
+     */
+    public LogReader(File file, long[] offsets) throws IOException
+    {
+        raf = new RandomAccessFile(file, "r");
+        this.offsets = offsets;
+        createCache();
+    }
+
+    /**
+     * Create an empty cache of run headers.
+     */
+    private void createCache()
+    {
+        cache = new Run[CACHE_SIZE];
+        cached = new int[CACHE_SIZE];
+        Arrays.fill(cached, -1);
+    }
+
+    /**
+     * @return The number of runs in the log.
+     */
+    public int getRunCount()
+    {
+        return offsets.length;
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return The number of steps recorded in the run.
+     */
+    public int getSteps(int run) throws IOException
+    {
+        return getRun(run).steps;
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return The name of each species in the run.
+     */
+    public String[] getSpeciesNames(int run) throws IOException
+    {
+        return getRun(run).names.clone();
+    }
+
+    /**
+     * Return the index of a species in a run.
+     * @param run The index of a run.
+     * @param name The name of the species.
+     * @return Its index, or -1 if the run does not record it.
+     */
+    public int getSpecies(int run, String name) throws IOException
+    {
+        String[] names = getRun(run).names;
+        for(int i = 0; i < names.length; i++) {
+            if(names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the count of one species at every step of a run.
+     * @param run The index of a run.
+     * @param species The index of the species.
+     * @return A new array holding the count at each step.
+     */
+    public int[] getColumn(int run, int species) throws IOException
+    {
+        return getColumn(run, species, null);
+    }
+
+    /**
+     * Return the count of one species at every step of a run, reusing
+     * an array if it is big enough.
+     * @param run The index of a run.
+     * @param species The index of the species.
+     * @param into The array to fill, or null.
+     * @return The array filled: into, or a new array if into was too small.
+     */
+    public int[] getColumn(int run, int species, int[] into) throws IOException
+    {
+        Run info = getRun(run);
+        int[] column = (into != null && into.length >= info.steps) ? into : new int[info.steps];
+        int step = 0;
+        for(int block = 0; block < info.blockStarts.length; block++) {
+            readBlock(info, block, species, column, step);
+            step += info.blockRows[block];
+        }
+        return column;
+    }
+
+    /**
+     * Copy the counts of one species from one block of a run.
+     * @param info The run.
+     * @param block The block.
+     * @param species The index of the species in the run.
+     * @param into Where to put the counts.
+     * @param at The index in into of the block's first step.
+     */
+    private void readBlock(Run info, int block, int species, int[] into, int at) throws IOException
+    {
+        int rows = info.blockRows[block];
+        int index = info.blockColumns[block][species];
+        if(index < 0) {
+            // A species not yet seen when the block was written had none.
+            Arrays.fill(into, at, at + rows, 0);
+        }
+        else if(info.blockCompressed[block]) {
+            int position = info.blockStarts[block];
+            for(int i = 0; i < index; i++) {
+                position += 4 + info.data.getInt(position);
+            }
+            codecs.get().readColumn(info.data, position + 4, info.data.getInt(position), rows, into, at);
+        }
+        else {
+            ByteBuffer data = info.data.duplicate();
+            data.position(info.blockStarts[block] + 4 * rows * index);
+            data.asIntBuffer().get(into, at, rows);
+        }
+    }
+
+    /**
+     * Return the count of one species at one step of a run.
+     * @param run The index of a run.
+     * @param species The index of the species.
+     * @param step The step.
+     * @return The count.
+     */
+    public int getCount(int run, int species, int step) throws IOException
+    {
+        Run info = getRun(run);
+        int block = 0;
+        int row = step;
+        while(row >= info.blockRows[block]) {
+            row -= info.blockRows[block];
+            block++;
+        }
+        if(!info.blockCompressed[block]) {
+            int index = info.blockColumns[block][species];
+            if(index < 0) {
+                return 0;
+            }
+            return info.data.getInt(info.blockStarts[block] + 4 * (info.blockRows[block] * index + row));
+        }
+        int[] counts = new int[info.blockRows[block]];
+        readBlock(info, block, species, counts, 0);
+        return counts[row];
+    }
+
+    /**
+     * Close the log.
+     */
+    public void close() throws IOException
+    {
+        raf.close();
+    }
+
+    /**
+     * Read the header of a run, if it is not cached, mapping the part
+     * of the log it is in. Runs may be read from several threads at once.
+     * @param run The index of the run.
+     * @return The run.
+     */
+    private synchronized Run getRun(int run) throws IOException
+    {
+        int slot = run % CACHE_SIZE;
+        if(cached[slot] == run) {
+            return cache[slot];
+        }
+        long offset = offsets[run];
+        long length = raf.length();
+        long size = REGION_SIZE;
+        while(true) {
+            if(region == null || offset < regionStart
+                              || offset - regionStart >= region.capacity()
+                              || size > REGION_SIZE) {
+                size = Math.min(size, length - offset);
+                region = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, size);
+                regionStart = offset;
+            }
+            ByteBuffer data = region.duplicate();
+            data.position((int) (offset - regionStart));
+            try {
+                Run info = new Run(data.slice());
+                cache[slot] = info;
+                cached[slot] = run;
+                return info;
+            }
+            catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+                // The run goes past the end of the region.
+                if(regionStart + region.capacity() >= length) {
+                    throw new IOException("Damaged run " + run);
+                }
+                size = Math.max(2L * region.capacity(), REGION_SIZE + 1L);
+                if(size > Integer.MAX_VALUE) {
+                    throw new IOException("Run " + run + " is too big to map");
+                }
+            }
+        }
+    }
+
+    /**
+     * One mapped run, with where each of its blocks starts.
+     */
+    private static class Run
+    {
+        private ByteBuffer data;
+        // Every species recorded at any point in the run.
+        private String[] names;
+        private int steps;
+        // Where each block's columns start, how many steps it holds,
+        // whether it is compressed, and which of its columns holds each
+        // species, or -1.
+        private int[] blockStarts;
+        private int[] blockRows;
+        private boolean[] blockCompressed;
+        private int[][] blockColumns;
+
+        /**
+         * Read the header of a run and find its blocks.
+         * @param data The run, starting at its RUN_MAGIC.
+         */
+        public Run(ByteBuffer data)
+        {
+            this.data = data;
+            data.position(4);
+            List<String> allNames = new ArrayList<String>();
+            String[] current = readNames(data, allNames);
+            List<int[]> blocks = new ArrayList<int[]>();
+            List<String[]> blockNames = new ArrayList<String[]>();
+            int rows;
+            while((rows = data.getInt()) != BinaryLog.END_OF_RUN) {
+                if(rows == BinaryLog.SPECIES_CHANGE) {
+                    current = readNames(data, allNames);
+                }
+                else if(rows == BinaryLog.PROPERTIES) {
+                    // Properties are read through the index.
+                    int count = data.getInt();
+                    for(int i = 0; i < 2 * count; i++) {
+                        data.position(data.position() + 2 + (data.getShort(data.position()) & 0xffff));
+                    }
+                }
+                else if(rows == BinaryLog.COMPRESSED_BLOCK) {
+                    rows = data.getInt();
+                    blocks.add(new int[] { data.position(), rows, 1 });
+                    blockNames.add(current);
+                    for(int i = 0; i < current.length; i++) {
+                        data.position(data.position() + 4 + data.getInt(data.position()));
+                    }
+                }
+                else {
+                    blocks.add(new int[] { data.position(), rows, 0 });
+                    blockNames.add(current);
+                    data.position(data.position() + 4 * rows * current.length);
+                }
+            }
+            steps = data.getInt();
+            names = allNames.toArray(new String[allNames.size()]);
+            blockStarts = new int[blocks.size()];
+            blockRows = new int[blocks.size()];
+            blockCompressed = new boolean[blocks.size()];
+            blockColumns = new int[blocks.size()][names.length];
+            for(int block = 0; block < blockStarts.length; block++) {
+                blockStarts[block] = blocks.get(block)[0];
+                blockRows[block] = blocks.get(block)[1];
+                blockCompressed[block] = blocks.get(block)[2] != 0;
+                List<String> inBlock = Arrays.asList(blockNames.get(block));
+                for(int species = 0; species < names.length; species++) {
+                    blockColumns[block][species] = inBlock.indexOf(names[species]);
+                }
+            }
+        }
+
+        /**
+         * Read a species count and the names that follow it.
+         * @param data The run, at the species count.
+         * @param allNames The names seen so far, which any new names are added to.
+         * @return The names read.
+         */
+        private static String[] readNames(ByteBuffer data, List<String> allNames)
+        {
+            String[] names = new String[data.getInt()];
+            for(int i = 0; i < names.length; i++) {
+                byte[] utf = new byte[data.getShort() & 0xffff];
+                data.get(utf);
+                // Names are class names, which never need the parts of
+                // modified UTF-8 that differ from standard UTF-8.
+                names[i] = new String(utf, StandardCharsets.UTF_8);
+                if(!allNames.contains(names[i])) {
+                    allNames.add(names[i]);
+                }
+            }
+            return names;
+        }
+    }
+}
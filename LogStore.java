@@ -0,0 +1,470 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The logged runs of every simulation, kept in a directory of segments.
+ *
+ * Each segment is a binary log. Runs are written to the newest
+ * segment until it holds SEGMENT_RUNS runs or SEGMENT_BYTES bytes,
+ * when it is closed and listed in the manifest, and a new segment is
+ * started. A closed segment is never written again, so its index
+ * never needs updating and it can be read by any number of threads.
+ *
+ * The runs of all segments are numbered together, oldest first.
+ */
+public class LogStore implements RunSource
+{
+    // The most runs and bytes written to a segment before it is closed.
+    public static final int SEGMENT_RUNS = 4096;
+    public static final long SEGMENT_BYTES = 64L << 20;
+    // The file listing the closed segments.
+    private static final String MANIFEST = "manifest";
+    // The names of segment files.
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    // The logs written by earlier versions, which are taken into the
+    // store when it is first used.
+    private static final String TEXT_LOG_FILE = "Logs.dat";
+    private static final String BINARY_LOG_FILE = "Logs.bin";
+
+    // The directory of segments.
+    private File directory;
+    // Every segment, oldest first.
+    private List<Segment> segments;
+    // The number of the first run of each segment.
+    private int[] firstRuns;
+    // The number of runs in all.
+    private int runs;
+
+    /**
+     * Open the store in a directory.
+     * @param directory The directory of segments.
+     * @throws IOException If the store cannot be read.
+     */
+    public LogStore(File directory) throws IOException
+    {
+        this.directory = directory;
+        prepare(directory);
+        segments = new ArrayList<Segment>();
+        firstRuns = new int[0];
+        refresh();
+    }
+
+    /**
+     * Bring the store up to date with runs and segments written since
+     * it was opened or last refreshed. Only segments still being
+     * written are looked at again.
+     * @return true if there are new runs.
+     * @throws IOException If the store cannot be read.
+     */
+    public synchronized boolean refresh() throws IOException
+    {
+        List<String> closed = readManifest(directory);
+        File[] files = listSegments(directory);
+        boolean changed = false;
+        for(int i = 0; i < files.length; i++) {
+            if(i == segments.size()) {
+                segments.add(new Segment(files[i]));
+                changed = true;
+            }
+            Segment segment = segments.get(i);
+            if(!segment.closed) {
+                changed |= segment.refresh();
+                segment.closed = closed.contains(files[i].getName());
+            }
+        }
+        if(changed) {
+            firstRuns = new int[segments.size()];
+            runs = 0;
+            for(int i = 0; i < segments.size(); i++) {
+                firstRuns[i] = runs;
+                segments.get(i).firstRun = runs;
+                runs += segments.get(i).index.getRunCount();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return The directory of segments.
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return The number of runs in all segments.
+     */
+    public synchronized int getRunCount()
+    {
+        return runs;
+    }
+
+    /**
+     * @param run The number of a run.
+     * @return The number of steps in the run.
+     */
+    public int getSteps(int run)
+    {
+        Segment segment = find(run);
+        return segment.index.getSteps(run - segment.firstRun);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @return The depth of the run's field, or 0 if not recorded.
+     */
+    public int getDepth(int run)
+    {
+        Segment segment = find(run);
+        return segment.index.getDepth(run - segment.firstRun);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @return The width of the run's field, or 0 if not recorded.
+     */
+    public int getWidth(int run)
+    {
+        Segment segment = find(run);
+        return segment.index.getWidth(run - segment.firstRun);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @return The seed of the run's world, or 0 if not recorded.
+     */
+    public long getSeed(int run)
+    {
+        Segment segment = find(run);
+        return segment.index.getSeed(run - segment.firstRun);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @return How the run was set up, by name.
+     */
+    public Map<String, String> getProperties(int run) throws IOException
+    {
+        Segment segment = find(run);
+        return segment.index.getProperties(run - segment.firstRun);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @return The name of each species in the run.
+     */
+    public String[] getSpeciesNames(int run) throws IOException
+    {
+        Segment segment = find(run);
+        return segment.getReader().getSpeciesNames(run - segment.firstRun);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @param name The name of a species.
+     * @return Its index in the run, or -1 if the run does not record it.
+     */
+    public int getSpecies(int run, String name) throws IOException
+    {
+        Segment segment = find(run);
+        return segment.getReader().getSpecies(run - segment.firstRun, name);
+    }
+
+    /**
+     * @param run The number of a run.
+     * @param species The index of a species in the run.
+     * @param into The array to fill, or null.
+     * @return The count of the species at each step of the run.
+     */
+    public int[] getColumn(int run, int species, int[] into) throws IOException
+    {
+        Segment segment = find(run);
+        return segment.getReader().getColumn(run - segment.firstRun, species, into);
+    }
+
+    /**
+     * Return the summary of a run. The first time a run is asked
+     * about, every run of its segment not yet summarised is read.
+     * @param run The number of a run.
+     * @return Its summary.
+     */
+    public RunSummary getSummary(int run) throws IOException
+    {
+        Segment segment = find(run);
+        return segment.getSummaries().getSummary(run - segment.firstRun);
+    }
+
+    /**
+     * Find the segment holding a run.
+     * @param run The number of the run.
+     * @return Its segment.
+     */
+    private synchronized Segment find(int run)
+    {
+        if(run < 0 || run >= runs) {
+            throw new IndexOutOfBoundsException("No run " + run);
+        }
+        // Find the last segment starting at or before the run. Empty
+        // segments start where the next one does, so are passed over.
+        int low = 0;
+        int high = firstRuns.length - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(firstRuns[middle] <= run) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    /**
+     * Close every segment being read.
+     */
+    public synchronized void close() throws IOException
+    {
+        for(Segment segment : segments) {
+            segment.closeReader();
+        }
+    }
+
+    /**
+     * One segment of the store.
+     */
+    private static class Segment
+    {
+        private File file;
+        private LogIndex index;
+        private LogReader reader;
+        private SummaryIndex summaries;
+        private boolean closed;
+        private int firstRun;
+
+        /**
+         * @param file The segment file.
+         */
+        public Segment(File file) throws IOException
+        {
+            this.file = file;
+            index = new LogIndex(file);
+        }
+
+        /**
+         * Read any runs added to the segment.
+         * @return true if there were new runs.
+         */
+        public synchronized boolean refresh() throws IOException
+        {
+            if(index.refresh()) {
+                closeReader();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return The reader for the segment, opened if needed.
+         */
+        public synchronized LogReader getReader() throws IOException
+        {
+            if(reader == null) {
+                reader = new LogReader(file, index.getOffsets());
+            }
+            return reader;
+        }
+
+        /**
+         * @return The summaries of the segment's runs, brought up to
+         *         date if needed.
+         */
+        public synchronized SummaryIndex getSummaries() throws IOException
+        {
+            if(summaries == null) {
+                summaries = new SummaryIndex(file);
+                summaries.refresh(index, getReader());
+            }
+            else if(summaries.getRunCount() != index.getRunCount()) {
+                summaries.refresh(index, getReader());
+            }
+            return summaries;
+        }
+
+        /**
+         * Close the reader, if open.
+         */
+        public synchronized void closeReader() throws IOException
+        {
+            if(reader != null) {
+                reader.close();
+                reader = null;
+            }
+        }
+    }
+
+    /**
+     * Return the segment files of a store, oldest first.
+     * @param directory The directory of segments.
+     * @return The segment files.
+     */
+    public static File[] listSegments(File directory)
+    {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<File>();
+        for(File file : files) {
+            String name = file.getName();
+            if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                segments.add(file);
+            }
+        }
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        // Segment numbers are zero-padded, so name order is age order.
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Return the segment new runs should be written to: the newest
+     * segment if it is still open, or else a new one.
+     * @param directory The directory of segments.
+     * @return The segment file.
+     * @throws IOException If the manifest cannot be read.
+     */
+    public static File openSegment(File directory) throws IOException
+    {
+        File[] files = listSegments(directory);
+        int number = 1;
+        if(files.length > 0) {
+            File newest = files[files.length - 1];
+            if(!readManifest(directory).contains(newest.getName())) {
+                return newest;
+            }
+            String name = newest.getName();
+            number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                                     name.length() - SEGMENT_SUFFIX.length())) + 1;
+        }
+        return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Record that a segment is closed. The manifest is rewritten in
+     * full and then put in place of the old one.
+     * @param segment The segment file.
+     * @throws IOException If the manifest cannot be written.
+     */
+    public static synchronized void closeSegment(File segment) throws IOException
+    {
+        File directory = segment.getParentFile();
+        List<String> closed = readManifest(directory);
+        if(closed.contains(segment.getName())) {
+            return;
+        }
+        closed.add(segment.getName());
+        File temp = new File(directory, MANIFEST + ".tmp");
+        PrintWriter out = new PrintWriter(new FileWriter(temp));
+        try {
+            for(String name : closed) {
+                out.println(name);
+            }
+        }
+        finally {
+            out.close();
+        }
+        File manifest = new File(directory, MANIFEST);
+        if(!temp.renameTo(manifest)) {
+            manifest.delete();
+            if(!temp.renameTo(manifest)) {
+                throw new IOException("Cannot replace " + manifest);
+            }
+        }
+    }
+
+    /**
+     * Read the names of the closed segments.
+     * @param directory The directory of segments.
+     * @return The names, oldest first.
+     * @throws IOException If the manifest cannot be read.
+     */
+    private static List<String> readManifest(File directory) throws IOException
+    {
+        List<String> closed = new ArrayList<String>();
+        File manifest = new File(directory, MANIFEST);
+        if(manifest.exists()) {
+            BufferedReader in = new BufferedReader(new FileReader(manifest));
+            try {
+                String line;
+                while((line = in.readLine()) != null) {
+                    if(line.trim().length() > 0) {
+                        closed.add(line.trim());
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Create the directory of a store if needed. A new store takes in
+     * the logs written by earlier versions beside it: a binary log is
+     * copied in as the first segment, or a text log is converted.
+     * The store is built in a temporary directory and only renamed into
+     * place once it is complete, so a failed migration leaves no store
+     * behind and is tried again next time.
+     * @param directory The directory of segments.
+     * @throws IOException If the directory or old logs cannot be used.
+     */
+    public static synchronized void prepare(File directory) throws IOException
+    {
+        if(directory.isDirectory()) {
+            return;
+        }
+        File parent = directory.getAbsoluteFile().getParentFile();
+        File building = new File(parent, directory.getName() + ".tmp");
+        // Anything left here is from a migration that did not finish.
+        File[] leftovers = building.listFiles();
+        if(leftovers != null) {
+            for(File leftover : leftovers) {
+                leftover.delete();
+            }
+        }
+        if(!building.isDirectory() && !building.mkdirs()) {
+            throw new IOException("Cannot create " + building);
+        }
+        File binaryLog = new File(parent, BINARY_LOG_FILE);
+        File textLog = new File(parent, TEXT_LOG_FILE);
+        File first = openSegment(building);
+        if(binaryLog.exists()) {
+            // Copied rather than moved, so the old log is only given up
+            // once the store holding it is in place.
+            Files.copy(binaryLog.toPath(), first.toPath());
+        }
+        else if(textLog.exists()) {
+            BinaryLog.convert(textLog, first);
+        }
+        if(first.exists()) {
+            closeSegment(first);
+        }
+        if(!building.renameTo(directory)) {
+            throw new IOException("Cannot move " + building + " to " + directory);
+        }
+        binaryLog.delete();
+    }
+}
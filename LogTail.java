@@ -0,0 +1,253 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follow a log store as runs are committed to it, keeping running
+ * totals over every run seen.
+ *
+ * The store remembers how far through each segment it has read, so
+ * when a segment changes only the runs committed since are read. Each
+ * new run adds its summary to the totals, so the cost of an update
+ * does not grow with the number of runs already seen.
+ */
+public class LogTail
+{
+    // How long to wait for a change before looking anyway, in case a
+    // change was not reported.
+    private static final long POLL_SECONDS = 5;
+
+    // The runs followed.
+    private LogStore store;
+    // The number of runs added to the totals.
+    private int runs;
+    // The total and longest number of steps over all runs.
+    private long totalSteps;
+    private int longest;
+    // The totals of each species, in the order first seen.
+    private Map<String, Tally> tallies;
+    // Reports changes in the directory, while watching.
+    private WatchService watcher;
+
+    /**
+     * Follow a store. Runs already in it are added to the totals at
+     * the first update.
+     * @param store The store to follow.
+     */
+    public LogTail(LogStore store)
+    {
+        this.store = store;
+        tallies = new LinkedHashMap<String, Tally>();
+    }
+
+    /**
+     * Add any runs committed since the last update to the totals.
+     * @return The number of runs added.
+     * @throws IOException If the store cannot be read.
+     */
+    public synchronized int update() throws IOException
+    {
+        store.refresh();
+        int added = 0;
+        while(runs < store.getRunCount()) {
+            add(store.getSummary(runs));
+            runs++;
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Add one run to the totals.
+     * @param run The summary of the run.
+     */
+    private void add(RunSummary run)
+    {
+        totalSteps += run.getSteps();
+        longest = Math.max(longest, run.getSteps());
+        for(String name : run.getSpeciesNames()) {
+            Tally tally = tallies.get(name);
+            if(tally == null) {
+                tally = new Tally();
+                tallies.put(name, tally);
+            }
+            tally.runs++;
+            tally.peaks += run.getMaximum(name);
+            int extinct = run.getExtinctionStep(name);
+            if(extinct >= 0) {
+                tally.extinctions++;
+                tally.extinctionSteps += extinct;
+            }
+        }
+    }
+
+    /**
+     * Update the totals whenever the store changes, printing them each
+     * time runs are added, until stopped.
+     * @throws IOException If the store cannot be read or watched.
+     */
+    public void watch() throws IOException
+    {
+        Path path = store.getDirectory().toPath();
+        WatchService watching = FileSystems.getDefault().newWatchService();
+        synchronized(this) {
+            watcher = watching;
+        }
+        path.register(watching, StandardWatchEventKinds.ENTRY_CREATE,
+                      StandardWatchEventKinds.ENTRY_MODIFY);
+        try {
+            if(update() > 0) {
+                System.out.println(report());
+            }
+            while(true) {
+                WatchKey key = watching.poll(POLL_SECONDS, TimeUnit.SECONDS);
+                boolean changed = (key == null);
+                if(key != null) {
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        // Ignore the indexes being written beside the segments.
+                        String name = String.valueOf(event.context());
+                        changed |= name.endsWith(".bin") || name.equals("manifest");
+                    }
+                    key.reset();
+                }
+                if(changed && update() > 0) {
+                    System.out.println(report());
+                }
+            }
+        }
+        catch(ClosedWatchServiceException e) {
+            // Stopped.
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            stop();
+        }
+    }
+
+    /**
+     * Stop watching the store.
+     */
+    public synchronized void stop()
+    {
+        if(watcher != null) {
+            try {
+                watcher.close();
+            }
+            catch(IOException e) {
+                // Already closed.
+            }
+            watcher = null;
+        }
+    }
+
+    /**
+     * @return The number of runs in the totals.
+     */
+    public synchronized int getRunCount()
+    {
+        return runs;
+    }
+
+    /**
+     * @return The mean number of steps in a run.
+     */
+    public synchronized double getMeanSteps()
+    {
+        return (runs == 0) ? 0 : (double) totalSteps / runs;
+    }
+
+    /**
+     * @return The most steps in any run.
+     */
+    public synchronized int getLongest()
+    {
+        return longest;
+    }
+
+    /**
+     * @param species The name of a species.
+     * @return The fraction of the runs logging the species in which
+     *         it died out.
+     */
+    public synchronized double getExtinctionRate(String species)
+    {
+        Tally tally = tallies.get(species);
+        return (tally == null) ? 0 : (double) tally.extinctions / tally.runs;
+    }
+
+    /**
+     * @param species The name of a species.
+     * @return The mean step the species died out at, over the runs in
+     *         which it did, or NaN if it never did.
+     */
+    public synchronized double getMeanExtinctionStep(String species)
+    {
+        Tally tally = tallies.get(species);
+        return (tally == null || tally.extinctions == 0)
+            ? Double.NaN : (double) tally.extinctionSteps / tally.extinctions;
+    }
+
+    /**
+     * @param species The name of a species.
+     * @return The mean over the runs of the species' highest count.
+     */
+    public synchronized double getMeanPeak(String species)
+    {
+        Tally tally = tallies.get(species);
+        return (tally == null) ? 0 : (double) tally.peaks / tally.runs;
+    }
+
+    /**
+     * @return The totals as one line of text.
+     */
+    public synchronized String report()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(runs).append(" runs, mean ")
+            .append(String.format("%.1f", getMeanSteps())).append(" steps");
+        for(Map.Entry<String, Tally> entry : tallies.entrySet()) {
+            Tally tally = entry.getValue();
+            text.append("; ").append(entry.getKey()).append(" died out in ")
+                .append(tally.extinctions).append('/').append(tally.runs);
+            if(tally.extinctions > 0) {
+                text.append(String.format(" (mean step %.0f)", getMeanExtinctionStep(entry.getKey())));
+            }
+            text.append(String.format(", mean peak %.0f", getMeanPeak(entry.getKey())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The running totals of one species.
+     */
+    private static class Tally
+    {
+        // The runs logging the species, and those it died out in.
+        private int runs;
+        private int extinctions;
+        // The sum of the steps it died out at, and of its peaks.
+        private long extinctionSteps;
+        private long peaks;
+    }
+
+    /**
+     * Follow the log store, printing the totals as runs are committed.
+     * @param args The store directory, by default that of the Logger.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File directory = new File(args.length > 0 ? args[0] : Logger.LOG_DIRECTORY);
+        new LogTail(new LogStore(directory)).watch();
+    }
+}
@@ -0,0 +1,659 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream runs into a log store on a background thread.
+ *
+ * Loggers hand over blocks of steps as they fill. Only so many blocks
+ * can wait to be written; a logger offered no room keeps its block
+ * and offers it again later. The ends of runs are always accepted
+ * without waiting, as each carries at most one block. The writer
+ * thread takes whatever is waiting, writes it in one batch and
+ * flushes. A run only counts once its end has been written, so a run
+ * cut short by a crash is ignored by readers and written over by the
+ * next run.
+ *
+ * Blocks are compressed as they are written. Once a run ends and the
+ * segment being written is full, the segment is closed and the next
+ * run starts a new one.
+ *
+ * There is one writer for each store. Only one run can be written
+ * at a time, so blocks of any other run that is logging at the same
+ * time are held back until the run being written ends. Held blocks
+ * are compressed into a temporary file for each run, not kept in
+ * memory, and copied into the segment when their run's turn comes.
+ * As a run that never ends keeps its turn, only so many runs can be
+ * held, up to a segment's worth of bytes in all; a run that would go
+ * beyond either is dropped.
+ *
+ * If an entry cannot be written or held, only the run it belongs to
+ * is dropped: the rest of its entries are skipped, and what was
+ * written of it is left without an end, so readers step over it.
+ */
+public class LogWriter implements Runnable
+{
+    // The most blocks that can wait to be written.
+    private static final int QUEUE_SIZE = 64;
+    // The size of the buffer in front of the file.
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The size of the buffer in front of each held run's file.
+    private static final int HELD_BUFFER_SIZE = 1 << 13;
+    // The most runs that can be held back, and the most bytes they
+    // can hold between them.
+    private static final int MAX_HELD_RUNS = 16;
+    private static final long MAX_HELD_BYTES = LogStore.SEGMENT_BYTES;
+    // The writer for each store directory.
+    private static final Map<File, LogWriter> writers = new HashMap<File, LogWriter>();
+
+    // The kinds of entry.
+    private static final int BLOCK = 0;
+    private static final int END = 1;
+    private static final int ABORT = 2;
+    private static final int STOP = 3;
+
+    // The store directory.
+    private File directory;
+    // The entries waiting to be written, and the room left for blocks.
+    private BlockingQueue<Entry> queue;
+    private Semaphore room;
+    // The thread writing them.
+    private Thread thread;
+
+    // The rest is only used on the writer thread.
+    // The segment being written, the open file and the stream over it.
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private DataOutputStream out;
+    // The offset of each committed run.
+    private long[] offsets;
+    // The run being written, where it starts, and its species.
+    private Object current;
+    private long currentStart;
+    private String[] currentNames;
+    // The blocks of other runs, waiting for the current run to end.
+    private Map<Object, HeldRun> held;
+    // Runs that could not be written, whose remaining entries are dropped.
+    private Set<Object> dropped;
+    // Compresses the blocks.
+    private BlockCodec codec = new BlockCodec();
+    // The bytes written to segments closed since the writer started,
+    // and the number of runs committed.
+    private long closedBytes;
+    private int committed;
+
+    /**
+     * Return the writer for a store, starting it if needed.
+     * @param directory The store directory.
+     * @return The writer for that store.
+     */
+    public static LogWriter forDirectory(File directory)
+    {
+        synchronized(writers) {
+            File key = directory.getAbsoluteFile();
+            LogWriter writer = writers.get(key);
+            if(writer == null) {
+                writer = new LogWriter(key);
+                writers.put(key, writer);
+            }
+            return writer;
+        }
+    }
+
+    /**
+     * Start a writer for a store.
+     * @param directory The store directory.
+     */
+    private LogWriter(File directory)
+    {
+        this.directory = directory;
+        queue = new LinkedBlockingQueue<Entry>();
+        room = new Semaphore(QUEUE_SIZE);
+        held = new LinkedHashMap<Object, HeldRun>();
+        dropped = new HashSet<Object>();
+        thread = new Thread(this, "Log writer");
+        thread.setDaemon(true);
+        thread.start();
+        // Write out anything still waiting when the program exits.
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run()
+            {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Offer a block of steps without waiting.
+     * @param run The run the block belongs to.
+     * @param properties How the run was set up. Only written with the
+     *                   first block of a run.
+     * @param names The name of each species in the block.
+     * @param columns The count of each species at each step.
+     * @param rows The number of steps in the block.
+     * @return true if the block was accepted, false if the queue was
+     *         full and the block should be offered again later.
+     */
+    public boolean offerBlock(Object run, Map<String, String> properties,
+                              String[] names, int[][] columns, int rows)
+    {
+        if(!room.tryAcquire()) {
+            return false;
+        }
+        Entry entry = new Entry(BLOCK, run, names, columns, rows);
+        entry.properties = properties;
+        queue.add(entry);
+        return true;
+    }
+
+    /**
+     * Hand over a block of steps, waiting for room if needed. If the
+     * writer has stopped, the block is dropped.
+     * @param run The run the block belongs to.
+     * @param properties How the run was set up.
+     * @param names The name of each species in the block.
+     * @param columns The count of each species at each step.
+     * @param rows The number of steps in the block.
+     */
+    public void putBlock(Object run, Map<String, String> properties,
+                         String[] names, int[][] columns, int rows)
+    {
+        try {
+            while(!room.tryAcquire(1, TimeUnit.SECONDS)) {
+                if(!thread.isAlive()) {
+                    return;
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        Entry entry = new Entry(BLOCK, run, names, columns, rows);
+        entry.properties = properties;
+        queue.add(entry);
+    }
+
+    /**
+     * Write the last block of a run and commit it. This never waits.
+     * @param run The run to end.
+     * @param properties How the run was set up, if no block has been
+     *                   written yet.
+     * @param names The name of each species in the block.
+     * @param columns The count of each species at each step.
+     * @param rows The number of steps in the block.
+     * @param steps The number of steps in the whole run.
+     */
+    public void endRun(Object run, Map<String, String> properties,
+                       String[] names, int[][] columns, int rows, int steps)
+    {
+        Entry entry = new Entry(END, run, names, columns, rows);
+        entry.properties = properties;
+        entry.steps = steps;
+        queue.add(entry);
+    }
+
+    /**
+     * Abandon a run, so that readers step over it.
+     * @param run The run to abandon.
+     */
+    public void abortRun(Object run)
+    {
+        queue.add(new Entry(ABORT, run, null, null, 0));
+    }
+
+    /**
+     * Write everything waiting, and stop the writer thread. The writer
+     * cannot be used afterwards.
+     */
+    public void close()
+    {
+        synchronized(writers) {
+            writers.remove(directory);
+        }
+        if(thread.isAlive()) {
+            queue.add(new Entry(STOP, null, null, null, 0));
+            try {
+                thread.join();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Write entries as they arrive, a batch at a time.
+     */
+    public void run()
+    {
+        List<Entry> batch = new ArrayList<Entry>();
+        boolean stopping = false;
+        while(!stopping) {
+            try {
+                batch.add(queue.take());
+            }
+            catch(InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            LogFlushEvent event = new LogFlushEvent();
+            event.begin();
+            long bytesBefore = bytesWritten();
+            int committedBefore = committed;
+            for(Entry entry : batch) {
+                if(entry.kind == STOP) {
+                    stopping = true;
+                }
+                else {
+                    accept(entry);
+                }
+            }
+            if(out != null) {
+                try {
+                    out.flush();
+                }
+                catch(IOException e) {
+                    if(current != null) {
+                        drop(current, false, e);
+                    }
+                    closeFile();
+                }
+            }
+            event.end();
+            if(event.shouldCommit()) {
+                event.segment = (file == null) ? null : file.getName();
+                event.entries = batch.size();
+                event.committed = committed - committedBefore;
+                event.bytes = bytesWritten() - bytesBefore;
+                event.commit();
+            }
+            for(Entry entry : batch) {
+                if(entry.kind == BLOCK) {
+                    room.release();
+                }
+            }
+            batch.clear();
+        }
+        closeFile();
+        // Runs still held never ended, so are not worth keeping.
+        for(HeldRun run : held.values()) {
+            run.discard();
+        }
+        held.clear();
+    }
+
+    /**
+     * Write an entry, or hold it back if it belongs to a run other
+     * than the one being written. If that fails, the entry's run is
+     * dropped.
+     * @param entry The entry.
+     */
+    private void accept(Entry entry)
+    {
+        if(dropped.contains(entry.run)) {
+            if(entry.kind != BLOCK) {
+                dropped.remove(entry.run);
+            }
+            return;
+        }
+        resumeHeld();
+        if(current != null && current != entry.run) {
+            try {
+                hold(entry);
+            }
+            catch(IOException e) {
+                HeldRun run = held.remove(entry.run);
+                if(run != null) {
+                    run.discard();
+                }
+                drop(entry.run, entry.kind != BLOCK, e);
+            }
+            return;
+        }
+        try {
+            write(entry);
+        }
+        catch(IOException e) {
+            // What was written of the run is left without an end.
+            closeFile();
+            drop(entry.run, entry.kind != BLOCK, e);
+        }
+        resumeHeld();
+    }
+
+    /**
+     * Drop a run that could not be written, skipping the rest of its
+     * entries.
+     * @param run The run.
+     * @param ended Whether its last entry has already arrived.
+     * @param cause Why it was dropped.
+     */
+    private void drop(Object run, boolean ended, Exception cause)
+    {
+        System.out.println("Error writing logs \n" + cause);
+        if(!ended) {
+            dropped.add(run);
+        }
+    }
+
+    /**
+     * If no run is being written, write the runs held back in the
+     * order they started, until one is left unfinished. A held run
+     * that cannot be written is dropped.
+     */
+    private void resumeHeld()
+    {
+        while(current == null && !held.isEmpty()) {
+            Object next = held.keySet().iterator().next();
+            HeldRun waiting = held.remove(next);
+            try {
+                resume(next, waiting);
+            }
+            catch(IOException e) {
+                closeFile();
+                drop(next, waiting.ended, e);
+            }
+        }
+    }
+
+    /**
+     * Hold back an entry of a run other than the one being written.
+     * @param entry The entry.
+     * @throws IOException If the entry cannot be held, or there is no
+     *         room left to hold it.
+     */
+    private void hold(Entry entry) throws IOException
+    {
+        HeldRun run = held.get(entry.run);
+        if(entry.kind == ABORT) {
+            // Nothing of the run needs to be written.
+            if(run != null) {
+                held.remove(entry.run);
+                run.discard();
+            }
+            return;
+        }
+        if(run == null) {
+            if(held.size() >= MAX_HELD_RUNS) {
+                throw new IOException("Too many runs waiting to be logged");
+            }
+            run = new HeldRun(entry.names, entry.properties);
+            held.put(entry.run, run);
+        }
+        run.add(entry);
+        long heldBytes = 0;
+        for(HeldRun waiting : held.values()) {
+            heldBytes += waiting.out.size();
+        }
+        if(heldBytes > MAX_HELD_BYTES) {
+            throw new IOException("Too much waiting to be logged");
+        }
+    }
+
+    /**
+     * Start writing a run that was held back: its start, then the
+     * blocks held, then its end if it has ended.
+     * @param run The run.
+     * @param waiting What was held of it.
+     */
+    private void resume(Object run, HeldRun waiting) throws IOException
+    {
+        try {
+            waiting.out.close();
+            openFile();
+            current = run;
+            currentStart = channel.position();
+            BinaryLog.writeRunStart(out, waiting.firstNames);
+            BinaryLog.writeProperties(out, waiting.properties);
+            InputStream in = new BufferedInputStream(new FileInputStream(waiting.file), HELD_BUFFER_SIZE);
+            try {
+                byte[] buffer = new byte[HELD_BUFFER_SIZE];
+                int read;
+                while((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            finally {
+                in.close();
+            }
+            currentNames = waiting.names;
+            if(waiting.ended) {
+                commit(waiting.steps);
+            }
+        }
+        finally {
+            waiting.discard();
+        }
+    }
+
+    /**
+     * Write an entry of the current run, starting the run if needed.
+     * @param entry The entry.
+     */
+    private void write(Entry entry) throws IOException
+    {
+        if(current == null) {
+            if(entry.kind == ABORT) {
+                // Nothing of the run was ever written.
+                return;
+            }
+            openFile();
+            current = entry.run;
+            currentStart = channel.position();
+            currentNames = entry.names;
+            BinaryLog.writeRunStart(out, currentNames);
+            BinaryLog.writeProperties(out, entry.properties);
+        }
+        if(entry.kind == ABORT) {
+            BinaryLog.writeAbort(out);
+            out.flush();
+            current = null;
+            return;
+        }
+        if(entry.rows > 0) {
+            if(!Arrays.equals(entry.names, currentNames)) {
+                currentNames = entry.names;
+                BinaryLog.writeSpecies(out, currentNames);
+            }
+            codec.writeBlock(out, entry.columns, 0, entry.rows);
+        }
+        if(entry.kind == END) {
+            commit(entry.steps);
+        }
+    }
+
+    /**
+     * End the run being written and commit it, closing the segment if
+     * it is full.
+     * @param steps The number of steps in the whole run.
+     */
+    private void commit(int steps) throws IOException
+    {
+        BinaryLog.writeRunEnd(out, steps);
+        out.flush();
+        offsets = Arrays.copyOf(offsets, offsets.length + 1);
+        offsets[offsets.length - 1] = currentStart;
+        // The footer is written over by the next run.
+        long footer = channel.position();
+        BinaryLog.writeFooter(out, offsets, footer);
+        out.flush();
+        channel.truncate(channel.position());
+        channel.position(footer);
+        current = null;
+        committed++;
+        if(footer >= LogStore.SEGMENT_BYTES || offsets.length >= LogStore.SEGMENT_RUNS) {
+            closeFile();
+            LogStore.closeSegment(file);
+        }
+    }
+
+    /**
+     * Open the segment being written, if not already open, ready to
+     * write after its last whole run.
+     */
+    private void openFile() throws IOException
+    {
+        if(raf != null) {
+            return;
+        }
+        LogStore.prepare(directory);
+        file = LogStore.openSegment(directory);
+        raf = new RandomAccessFile(file, "rw");
+        offsets = BinaryLog.readIndex(raf);
+        long end = BinaryLog.findEnd(raf);
+        channel = raf.getChannel();
+        channel.position(end);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        if(end == 0) {
+            BinaryLog.writeHeader(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * @return The number of bytes written since the writer started.
+     */
+    private long bytesWritten()
+    {
+        return closedBytes + ((raf == null) ? 0 : out.size());
+    }
+
+    /**
+     * Close the segment being written, if open. A run being written is left
+     * without an end, so readers ignore it.
+     */
+    private void closeFile()
+    {
+        if(raf != null) {
+            closedBytes += out.size();
+            try {
+                out.flush();
+                raf.close();
+            }
+            catch(IOException e) {
+                System.out.println("Error writing logs \n" + e);
+            }
+            raf = null;
+            current = null;
+        }
+    }
+
+    /**
+     * The blocks of a run held back while another run is written,
+     * compressed into a temporary file in the order they will be
+     * written to the segment.
+     */
+    private class HeldRun
+    {
+        // The species and properties the run started with.
+        private String[] firstNames;
+        private Map<String, String> properties;
+        // The species of the latest block.
+        private String[] names;
+        // The file the blocks are written to, and the stream over it.
+        private File file;
+        private DataOutputStream out;
+        // Whether the run has ended, and its number of steps.
+        private boolean ended;
+        private int steps;
+
+        /**
+         * @param names The species the run started with.
+         * @param properties How the run was set up.
+         * @throws IOException If the file cannot be created.
+         */
+        public HeldRun(String[] names, Map<String, String> properties) throws IOException
+        {
+            firstNames = names;
+            this.names = names;
+            this.properties = properties;
+            file = File.createTempFile("held-run", ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), HELD_BUFFER_SIZE));
+        }
+
+        /**
+         * Add a block or end to the run.
+         * @param entry The entry.
+         */
+        public void add(Entry entry) throws IOException
+        {
+            if(entry.rows > 0) {
+                if(!Arrays.equals(entry.names, names)) {
+                    names = entry.names;
+                    BinaryLog.writeSpecies(out, names);
+                }
+                codec.writeBlock(out, entry.columns, 0, entry.rows);
+            }
+            if(entry.kind == END) {
+                ended = true;
+                steps = entry.steps;
+            }
+        }
+
+        /**
+         * Delete the file.
+         */
+        public void discard()
+        {
+            try {
+                out.close();
+            }
+            catch(IOException e) {
+                // Deleted anyway.
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Something for the writer thread to do.
+     */
+    private static class Entry
+    {
+        private int kind;
+        private Object run;
+        private String[] names;
+        private int[][] columns;
+        private int rows;
+        private int steps;
+        private Map<String, String> properties;
+
+        /**
+         * @param kind One of BLOCK, END, ABORT or STOP.
+         * @param run The run the entry belongs to.
+         * @param names The name of each species in the block.
+         * @param columns The count of each species at each step.
+         * @param rows The number of steps in the block.
+         */
+        public Entry(int kind, Object run, String[] names, int[][] columns, int rows)
+        {
+            this.kind = kind;
+            this.run = run;
+            this.names = names;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+}
@@ -1,96 +1,161 @@
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.ArrayList;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A class which logs the results of a simulation
+ * The count of each species is kept in a column of ints, one row
+ * per step. Every so many steps the columns are handed to a writer
+ * thread, which streams them into the log store, so the simulation
+ * does not wait for the disk and a long run does not fill memory.
+ * If the writer is behind, the block grows until the writer has room,
+ * up to MAX_ROWS steps; a block that size is handed over as soon as
+ * there is room, and the simulation waits for it.
  * @author alastair
  *
  */
 public class Logger {
 
-	// The messages to be written to the log
-	private ArrayList<String> logs;
+	// The directory runs are logged to
+	public static final String LOG_DIRECTORY = "Logs";
+	// The number of steps handed to the writer at a time
+	private static final int BLOCK_ROWS = 1024;
+	// The most steps a block can grow to while the writer is behind
+	private static final int MAX_ROWS = 64 * BLOCK_ROWS;
+
 	// The simulator we are logging
 	private Simulator simulator;
-	
+	// Where the log is written
+	private LogWriter writer;
+	// How the run was set up
+	private Map<String, String> properties;
+	// The classes logged, sorted by their name in the log
+	private Class<?>[] species;
+	// The name each class is logged as. A new array is made whenever
+	// a species is added, as the writer may still hold the old one.
+	private String[] names;
+	// The count of each species at each step of the current block
+	private int[][] columns;
+	// The number of steps the columns can hold
+	private int capacity;
+	// The number of steps in the current block
+	private int rows;
+	// The number of steps logged in all
+	private int steps;
+	// Whether the run has been finished or abandoned
+	private boolean finished;
+
 	/**
 	 * @param sim The simulator we're logging
 	 */
 	public Logger (Simulator sim) {
 		simulator = sim;
-		logs = new ArrayList<String>();
-		write("[start]");
-		//write("[size="+sim.getField().getDepth()+","+sim.getField().getWidth()+"]");
-		addRecord(simulator.getView().stats.getPopulationDetails(simulator.getField()));
+		writer = LogWriter.forDirectory(new File(LOG_DIRECTORY));
+		properties = sim.getParameters();
+		species = new Class<?>[0];
+		names = new String[0];
+		columns = new int[0][];
+		capacity = BLOCK_ROWS;
+		addRecord();
 	}
-	
+
 	/**
-	 * Add a record to the log
-	 * (This method formats the log)
-	 * @param record The population record to be logged
+	 * Add a record of the current population to the log
+	 * The counts are read straight from the simulator's statistics
 	 */
-	public void addRecord(String record) {
-		String[] results = record.split(": ");
-		String newRecord = null, foxRecord = null, rabbitRecord = null, trapRecord = null;
-        for(int i=0; i<=3; i++){
-            if(results[i].contains("Fox"))
-            {
-            	String count = results[i+1];
-            	String[] count2 = count.split(" ");
-            	count = count2[0];
-            	foxRecord = "fox:"+Integer.parseInt(count);
-            }
-            if(results[i].contains("Rabbit"))
-            {
-            	String count = results[i+1];
-            	String[] count2 = count.split(" ");
-            	count = count2[0];
-            	rabbitRecord = "rabbit:"+Integer.parseInt(count);
-            }
-            if(results[i].contains("Trap"))
-            {
-            	String count = results[i+1];
-            	String[] count2 = count.split(" ");
-            	count = count2[0];
-            	trapRecord = "trap:"+Integer.parseInt(count);
-            }
-        }
-        newRecord = foxRecord+"+"+rabbitRecord+"+"+trapRecord;
-		write(newRecord);
+	public void addRecord() {
+		FieldStats stats = simulator.getStats();
+		Field field = simulator.getField();
+		Set<?> counted = stats.getCountedClasses(field);
+		if(counted.size() != species.length) {
+			for(Object anyClass : counted) {
+				addColumn((Class<?>) anyClass);
+			}
+		}
+		if(rows == capacity) {
+			handOver();
+		}
+		for(int i=0; i<species.length; i++) {
+			columns[i][rows] = stats.getCount(field, species[i]);
+		}
+		rows++;
+		steps++;
 	}
-	
+
 	/**
-	 * Write raw data to the log
+	 * Hand the current block to the writer and start a new one
+	 * If the writer is behind, the block is kept and made bigger
+	 * instead, and handed over when it next fills. Once it has
+	 * MAX_ROWS steps, this waits for the writer to take it
+	 */
+	private void handOver() {
+		if(capacity < MAX_ROWS && !writer.offerBlock(this, properties, names, columns, rows)) {
+			capacity = Math.min(capacity * 2, MAX_ROWS);
+			for(int i=0; i<species.length; i++) {
+				columns[i] = Arrays.copyOf(columns[i], capacity);
+			}
+			return;
+		}
+		if(capacity == MAX_ROWS) {
+			writer.putBlock(this, properties, names, columns, rows);
+		}
+		columns = new int[species.length][BLOCK_ROWS];
+		capacity = BLOCK_ROWS;
+		rows = 0;
+	}
 
-	 * @param data Raw data to be written to the log
+	/**
+	 * Start logging a species if it is not already logged
+	 * Earlier steps of the block are given a count of zero, and the
+	 * columns are kept in order of name so each log holds the same order
+	 * @param anyClass The class to log
 	 */
-	private void write(String data) {
-		logs.add(data);
+	private void addColumn(Class<?> anyClass) {
+		int at = 0;
+		String name = anyClass.getName().toLowerCase();
+		while(at < species.length && names[at].compareTo(name) < 0) {
+			at++;
+		}
+		if(at < species.length && species[at] == anyClass) {
+			return;
+		}
+		species = insert(species, at, anyClass);
+		names = insert(names, at, name);
+		columns = insert(columns, at, new int[capacity]);
 	}
-	
+
 	/**
-	 * Finish writing to the log and actually write to the log file
-	 * (It's saved till last to prevent half-written logs)
+	 * Return a copy of an array with one more element
+	 * @param array The array to copy
+	 * @param at Where to put the new element
+	 * @param element The new element
+	 * @return The new array
+	 */
+	private static <T> T[] insert(T[] array, int at, T element) {
+		T[] bigger = Arrays.copyOf(array, array.length + 1);
+		System.arraycopy(array, at, bigger, at + 1, array.length - at);
+		bigger[at] = element;
+		return bigger;
+	}
 
+	/**
+	 * Finish the log, committing the run once the writer reaches it
 	 */
 	public void finish() {
-		write("[finish]");
-		try {
-			FileWriter log = new FileWriter("Logs.dat", true);
-		   	   try {
-		   		Iterator<String> it = logs.iterator();
-		   		while(it.hasNext()){
-			    log.write(it.next()+"\n");}
-			    log.close();
-		   	   }
-		   	   catch(NullPointerException e){
-		   		   System.out.println("Error writing logs \n"+e);
-		   	   }
+		if(!finished) {
+			finished = true;
+			writer.endRun(this, properties, names, columns, rows, steps);
 		}
-		catch(IOException e) {
-		    System.out.println("Error writing logs \n"+e);
+	}
+
+	/**
+	 * Abandon the log, so that the run is not analysed
+	 */
+	public void abandon() {
+		if(!finished) {
+			finished = true;
+			writer.abortRun(this);
 		}
-	}	
-}
\ No newline at end of file
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * Spread animals and traps in irregular patches of high and low
+ * density. Random densities are given to the corners of a coarse
+ * lattice and interpolated between them, so each patch is roughly
+ * the size of one lattice square.
+ */
+public class PatchyDistribution implements SpatialDistribution
+{
+    // The size of one lattice square, in locations.
+    private int patchSize;
+    // The seed used for the lattice densities.
+    private long seed;
+
+    /**
+     * Create a patchy distribution.
+     * @param patchSize The size of a patch, in locations. Must be
+     *                  greater than zero.
+     */
+    public PatchyDistribution(int patchSize)
+    {
+        this.patchSize = patchSize;
+    }
+
+    /**
+     * Remember the seed. The lattice densities are computed from it
+     * when needed rather than stored.
+     */
+    public void prepare(int depth, int width, long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @return The lattice densities interpolated at this location.
+     */
+    public double density(int row, int col)
+    {
+        int latticeRow = row / patchSize;
+        int latticeCol = col / patchSize;
+        double down = (row % patchSize) / (double) patchSize;
+        double across = (col % patchSize) / (double) patchSize;
+        double top = corner(latticeRow, latticeCol) * (1 - across)
+                         + corner(latticeRow, latticeCol + 1) * across;
+        double bottom = corner(latticeRow + 1, latticeCol) * (1 - across)
+                         + corner(latticeRow + 1, latticeCol + 1) * across;
+        return top * (1 - down) + bottom * down;
+    }
+
+    /**
+     * Return the density at a corner of the lattice.
+     * @param latticeRow The row of the corner.
+     * @param latticeCol The column of the corner.
+     * @return A density between 0 and 1.
+     */
+    private double corner(int latticeRow, int latticeCol)
+    {
+        long hash = WorldGenerator.mix(seed ^ (((long) latticeRow << 32) | (latticeCol & 0xffffffffL)));
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,260 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import javax.swing.JPanel;
+
+/**
+ * A live chart of the population of each species over the whole run.
+ *
+ * The history is kept in a fixed number of buckets per species, each
+ * holding the smallest and largest count seen over a span of steps.
+ * When the buckets are all used, neighbouring pairs are merged and
+ * the span doubles, so memory stays the same however long the run
+ * and peaks are never lost to the downsampling.
+ *
+ * Counts are recorded on the simulation thread and the chart is
+ * painted on the Event Dispatch Thread. Between merges only the
+ * buckets added since the last paint are drawn.
+ */
+public class PopulationChart extends JPanel
+{
+    private static final long serialVersionUID = 1L;
+
+    // The number of buckets kept for each species.
+    private static final int BUCKETS = 512;
+    // The most species the chart can show.
+    private static final int MAX_SERIES = 16;
+    // Colour used behind the chart.
+    private static final Color BACKGROUND = Color.white;
+
+    // The classes charted and the RGB value each is drawn in.
+    private Class<?>[] classes;
+    private int[] colors;
+    // The number of species charted.
+    private int seriesCount;
+    // The smallest and largest count in each bucket, per species.
+    private int[][] mins, maxs;
+    // The number of buckets in use, including the one being filled.
+    private int buckets;
+    // The steps covered by each bucket, and how many of them the
+    // bucket being filled has seen.
+    private int span, filled;
+    // The last step recorded, so a reset can be noticed.
+    private int lastStep;
+    // How many times the buckets have been merged or cleared. Any
+    // change means the whole chart must be redrawn.
+    private int generation;
+    // The largest count so far.
+    private int peak;
+
+    // The image the chart is drawn into, and what it shows. Only
+    // used on the Event Dispatch Thread.
+    private BufferedImage image;
+    private int drawnGeneration = -1;
+    private int drawnBuckets;
+    private int drawnSeries;
+    private int drawnScale;
+    // The buckets being drawn, copied while holding the lock so they
+    // can be drawn without it, and the colour of each series.
+    private int[][] paintMins, paintMaxs;
+    private int[] paintRGB;
+    private Color[] paintColors;
+
+    /**
+     * Create an empty chart.
+     */
+    public PopulationChart()
+    {
+        classes = new Class<?>[MAX_SERIES];
+        colors = new int[MAX_SERIES];
+        mins = new int[MAX_SERIES][BUCKETS];
+        maxs = new int[MAX_SERIES][BUCKETS];
+        paintMins = new int[MAX_SERIES][BUCKETS];
+        paintMaxs = new int[MAX_SERIES][BUCKETS];
+        paintRGB = new int[MAX_SERIES];
+        paintColors = new Color[MAX_SERIES];
+        clear();
+    }
+
+    /**
+     * Record the counts for one step. Species are added to the chart
+     * the first time they are seen. A step earlier than the last one
+     * starts a new chart.
+     * @param step The step the counts are for.
+     * @param newClasses The class of each species.
+     * @param newColors The RGB value to draw each species in.
+     * @param counts The count of each species.
+     * @param first The index of the first species to record.
+     * @param end The index after the last species to record.
+     */
+    public synchronized void record(int step, Class<?>[] newClasses, int[] newColors,
+                                    int[] counts, int first, int end)
+    {
+        if(step < lastStep) {
+            clear();
+        }
+        lastStep = step;
+        if(filled == span) {
+            if(buckets == BUCKETS) {
+                merge();
+            }
+            buckets++;
+            filled = 0;
+        }
+        int bucket = buckets - 1;
+        for(int i = first; i < end; i++) {
+            int series = seriesFor(newClasses[i], newColors[i]);
+            if(series < 0) {
+                continue;
+            }
+            int count = counts[i];
+            if(filled == 0 || count < mins[series][bucket]) {
+                mins[series][bucket] = count;
+            }
+            if(filled == 0 || count > maxs[series][bucket]) {
+                maxs[series][bucket] = count;
+            }
+            peak = Math.max(peak, count);
+        }
+        filled++;
+    }
+
+    /**
+     * Return the series for a species, adding one if needed.
+     * @param anyClass The class of the species.
+     * @param color The RGB value to draw it in.
+     * @return The index of the series, or -1 if the chart is full.
+     */
+    private int seriesFor(Class<?> anyClass, int color)
+    {
+        for(int series = 0; series < seriesCount; series++) {
+            if(classes[series] == anyClass) {
+                colors[series] = color;
+                return series;
+            }
+        }
+        if(seriesCount == MAX_SERIES) {
+            return -1;
+        }
+        classes[seriesCount] = anyClass;
+        colors[seriesCount] = color;
+        Arrays.fill(mins[seriesCount], 0);
+        Arrays.fill(maxs[seriesCount], 0);
+        return seriesCount++;
+    }
+
+    /**
+     * Merge each pair of buckets into one, halving the number in use
+     * and doubling the steps each covers.
+     */
+    private void merge()
+    {
+        for(int series = 0; series < seriesCount; series++) {
+            int[] min = mins[series];
+            int[] max = maxs[series];
+            for(int i = 0; i < BUCKETS / 2; i++) {
+                min[i] = Math.min(min[2 * i], min[2 * i + 1]);
+                max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+            }
+        }
+        buckets = BUCKETS / 2;
+        span *= 2;
+        generation++;
+    }
+
+    /**
+     * Forget everything recorded.
+     */
+    private void clear()
+    {
+        seriesCount = 0;
+        buckets = 0;
+        span = 1;
+        filled = 1;
+        lastStep = 0;
+        peak = 0;
+        generation++;
+    }
+
+    /**
+     * Tell the GUI manager how big we would like to be.
+     */
+    public Dimension getPreferredSize()
+    {
+        return new Dimension(BUCKETS / 2, 200);
+    }
+
+    /**
+     * Draw the chart. Only buckets that have changed since the last
+     * paint are drawn, unless the buckets have been merged, the scale
+     * has grown or the component has been resized. The buckets to draw
+     * are copied while holding the lock, and drawn after letting it
+     * go, so the simulation never waits for the chart to be drawn.
+     */
+    public void paintComponent(Graphics g)
+    {
+        int width = getWidth();
+        int height = getHeight();
+        if(width <= 0 || height <= 0) {
+            return;
+        }
+        if(image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            drawnGeneration = -1;
+        }
+        int generationNow, bucketsNow, seriesNow, peakNow, from;
+        synchronized(this) {
+            generationNow = generation;
+            bucketsNow = buckets;
+            seriesNow = seriesCount;
+            peakNow = peak;
+            // The scale can only be worked out from the peak, so copy
+            // from the first changed bucket and decide below whether
+            // everything must be drawn again.
+            from = (generationNow != drawnGeneration || seriesNow != drawnSeries
+                    || peakNow > drawnScale) ? 0 : Math.max(drawnBuckets - 1, 0);
+            for(int series = 0; series < seriesNow; series++) {
+                System.arraycopy(mins[series], from, paintMins[series], from, bucketsNow - from);
+                System.arraycopy(maxs[series], from, paintMaxs[series], from, bucketsNow - from);
+                paintRGB[series] = colors[series];
+            }
+        }
+        for(int series = 0; series < seriesNow; series++) {
+            if(paintColors[series] == null || paintColors[series].getRGB() != (paintRGB[series] | 0xff000000)) {
+                paintColors[series] = new Color(paintRGB[series]);
+            }
+        }
+        // Leave headroom so the scale does not change every step.
+        int scale = drawnScale;
+        if(peakNow > scale || generationNow != drawnGeneration) {
+            scale = Math.max(peakNow + peakNow / 4, 10);
+        }
+        Graphics chart = image.getGraphics();
+        if(generationNow != drawnGeneration || scale != drawnScale || seriesNow != drawnSeries) {
+            chart.setColor(BACKGROUND);
+            chart.fillRect(0, 0, width, height);
+            from = 0;
+        }
+        for(int bucket = from; bucket < bucketsNow; bucket++) {
+            int x = bucket * width / BUCKETS;
+            int endX = Math.max((bucket + 1) * width / BUCKETS, x + 1);
+            // Redraw the column of the bucket being filled.
+            chart.setColor(BACKGROUND);
+            chart.fillRect(x, 0, endX - x, height);
+            for(int series = 0; series < seriesNow; series++) {
+                int top = height - 1 - (int) ((long) paintMaxs[series][bucket] * (height - 1) / scale);
+                int bottom = height - 1 - (int) ((long) paintMins[series][bucket] * (height - 1) / scale);
+                chart.setColor(paintColors[series]);
+                chart.fillRect(x, top, endX - x, bottom - top + 1);
+            }
+        }
+        chart.dispose();
+        drawnGeneration = generationNow;
+        drawnBuckets = bucketsNow;
+        drawnSeries = seriesNow;
+        drawnScale = scale;
+        g.drawImage(image, 0, 0, null);
+    }
+}
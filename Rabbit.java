@@ -22,8 +22,6 @@ public class Rabbit extends Animal
     private static final double BREEDING_PROBABILITY = 0.12;
     // The maximum number of births.
     private static final int MAX_LITTER_SIZE = 4;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
     
     // Individual characteristics (instance fields).
     
@@ -40,10 +38,25 @@ public class Rabbit extends Animal
      */
     public Rabbit (boolean randomAge, Field field, Location location)
     {
-        super(field, location);
+        this(randomAge, field, location, Randomizer.getRandom());
+    }
+    
+    /**
+     * Create a new rabbit, choosing its gender and any random age
+     * with the given random number generator, so that a world made
+     * from a seed is always the same.
+     * 
+     * @param randomAge If true, the rabbit will have a random age.
+     * @param field The field currently occupied.
+     * @param location The location within the field.
+     * @param random The generator to choose with.
+     */
+    public Rabbit (boolean randomAge, Field field, Location location, Random random)
+    {
+        super(field, location, random);
         age = 0;
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
+            age = random.nextInt(MAX_AGE);
         }
     }
     
@@ -51,12 +64,17 @@ public class Rabbit extends Animal
      * This is what the rabbit does most of the time - it runs 
      * around. Sometimes it will breed or die of old age.
      * @param newRabbits A list to add newly born rabbits to.
+     * @param rand The simulation's random number generator.
      */
-    public void act(List<Animal> newRabbits)
+    public void act(List<Rabbit> newRabbits, Random rand)
     {
         incrementAge();
+        if(isAlive() && isHemmedIn()) {
+            // Overcrowding.
+            setDead();
+        }
         if(isAlive()) {
-            giveBirth(newRabbits);            
+            giveBirth(newRabbits, rand);            
             // Try to move into a free location.
             Location newLocation = getField().freeAdjacentLocation(getLocation());
             if(newLocation != null) {
@@ -69,6 +87,16 @@ public class Rabbit extends Animal
         }
     }
 
+    /**
+     * Check, without building the list of free neighbours, whether
+     * the rabbit cannot possibly move.
+     * @return true if the rabbit has no free neighbours.
+     */
+    private boolean isHemmedIn()
+    {
+        return !getField().hasFreeAdjacentLocation(getLocation());
+    }
+
     /**
      * Increase the age.
      * This could result in the rabbit's death.
@@ -87,8 +115,9 @@ public class Rabbit extends Animal
      * Check whether or not this rabbit is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newRabbits A list to add newly born rabbits to.
+     * @param rand The simulation's random number generator.
      */
-    private void giveBirth(List<Animal> newRabbits)
+    private void giveBirth(List<Rabbit> newRabbits, Random rand)
     {    	
     	if(getGender() == 'F')
     	{
@@ -96,10 +125,10 @@ public class Rabbit extends Animal
 		        // Get a list of adjacent free locations.
 		        Field field = getField();
 		        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-		        int births = breed();
+		        int births = breed(rand);
 		        for(int b = 0; b < births && free.size() > 0; b++) {
 		            Location loc = free.remove(0);
-		            Rabbit young = new Rabbit(false, field, loc);
+		            Rabbit young = new Rabbit(false, field, loc, rand);
 		    		if(diseased() && rand.nextDouble() <= DISEASED_INHERITANCE_RATE)
 		    		{
 		    			young.setDiseased(true);
@@ -112,9 +141,10 @@ public class Rabbit extends Animal
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param rand The simulation's random number generator.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(Random rand)
     {
         int births = 0;
         if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
@@ -0,0 +1,385 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Measures of each of a set of logged runs, worked out in parallel.
+ *
+ * The runs are split into batches that are measured on the common
+ * fork-join pool. Each batch reads its runs one species column at a
+ * time into a reused array and makes a single pass over it. Results
+ * are kept in flat primitive tables with one row per run and, where
+ * it applies, one column per species, in the order of getSpeciesNames.
+ */
+public class RunAnalytics
+{
+    // The number of runs measured by one task.
+    private static final int BATCH_RUNS = 64;
+    // The fraction of a species' standard deviation its count must
+    // move past its mean to count as crossing it. This stops noise
+    // around the mean being taken for oscillation.
+    private static final double CROSSING_BAND = 0.25;
+
+    // Where the runs are read from.
+    private RunSource reader;
+    // The index in the log of each run measured.
+    private int[] runs;
+    // Every species seen in the runs measured.
+    private String[] species;
+    // The number of steps in each run.
+    private int[] steps;
+    // The step each species died out at in each run, or -1 if it
+    // survived to the end.
+    private int[] extinctionSteps;
+    // The order each species died out in each run, starting from 1
+    // for the first to die out; 0 if it survived.
+    private int[] extinctionOrder;
+    // One bit for each species that survived each run.
+    private long[] survivors;
+    // The largest and mean count of each species in each run.
+    private int[] peaks;
+    private double[] means;
+    // The mean number of steps between the rises of each species
+    // above its mean, or NaN if it did not oscillate.
+    private double[] periods;
+
+    /**
+     * Measure some of the runs of a log.
+     * @param reader Where the runs are read from.
+     * @param runs The index of each run to measure.
+     * @throws IOException If the runs cannot be read.
+     */
+    public RunAnalytics(RunSource reader, int[] runs) throws IOException
+    {
+        this.reader = reader;
+        this.runs = runs.clone();
+        species = findSpecies();
+        if(species.length > 64) {
+            throw new IOException("Too many species to analyse: " + species.length);
+        }
+        int cells = runs.length * species.length;
+        steps = new int[runs.length];
+        extinctionSteps = new int[cells];
+        extinctionOrder = new int[cells];
+        survivors = new long[runs.length];
+        peaks = new int[cells];
+        means = new double[cells];
+        periods = new double[cells];
+        measureAll();
+    }
+
+    /**
+     * Measure every run of a log.
+     * @param reader Where the runs are read from.
+     * @return The measures.
+     * @throws IOException If the runs cannot be read.
+     */
+    public static RunAnalytics ofAll(RunSource reader) throws IOException
+    {
+        int[] runs = new int[reader.getRunCount()];
+        for(int i = 0; i < runs.length; i++) {
+            runs[i] = i;
+        }
+        return new RunAnalytics(reader, runs);
+    }
+
+    /**
+     * Find every species named in the runs, in the order first seen.
+     * @return The names.
+     */
+    private String[] findSpecies() throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        for(int run : runs) {
+            for(String name : reader.getSpeciesNames(run)) {
+                if(!names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Measure every run, a batch at a time in parallel.
+     */
+    private void measureAll() throws IOException
+    {
+        List<Batch> batches = new ArrayList<Batch>();
+        for(int first = 0; first < runs.length; first += BATCH_RUNS) {
+            batches.add(new Batch(first, Math.min(first + BATCH_RUNS, runs.length)));
+        }
+        try {
+            for(Future<Void> done : ForkJoinPool.commonPool().invokeAll(batches)) {
+                done.get();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * The runs measured by one task.
+     */
+    private class Batch implements Callable<Void>
+    {
+        private int first, end;
+        // The column being measured, reused from run to run.
+        private int[] column = new int[0];
+
+        /**
+         * @param first The first run of the batch, as an index into runs.
+         * @param end The run after the last of the batch.
+         */
+        public Batch(int first, int end)
+        {
+            this.first = first;
+            this.end = end;
+        }
+
+        /**
+         * Measure each run of the batch.
+         */
+        public Void call() throws IOException
+        {
+            for(int i = first; i < end; i++) {
+                measure(i);
+            }
+            return null;
+        }
+
+        /**
+         * Measure one run.
+         * @param i The run, as an index into runs.
+         */
+        private void measure(int i) throws IOException
+        {
+            int run = runs[i];
+            int length = reader.getSteps(run);
+            steps[i] = length;
+            long alive = 0;
+            for(int s = 0; s < species.length; s++) {
+                int cell = i * species.length + s;
+                int index = reader.getSpecies(run, species[s]);
+                if(index < 0) {
+                    // Never part of the run.
+                    extinctionSteps[cell] = 0;
+                    periods[cell] = Double.NaN;
+                    continue;
+                }
+                column = reader.getColumn(run, index, column);
+                measureColumn(cell, length);
+                if(extinctionSteps[cell] < 0) {
+                    alive |= 1L << s;
+                }
+            }
+            survivors[i] = alive;
+            rankExtinctions(i);
+        }
+
+        /**
+         * Work out the peak, mean, extinction and period of one
+         * species in one run, from the column.
+         * @param cell Where to store the results.
+         * @param length The number of steps in the column.
+         */
+        private void measureColumn(int cell, int length)
+        {
+            int peak = 0;
+            long sum = 0;
+            double sumOfSquares = 0;
+            int lastAlive = -1;
+            for(int step = 0; step < length; step++) {
+                int count = column[step];
+                peak = Math.max(peak, count);
+                sum += count;
+                sumOfSquares += (double) count * count;
+                if(count > 0) {
+                    lastAlive = step;
+                }
+            }
+            double mean = (length == 0) ? 0 : (double) sum / length;
+            peaks[cell] = peak;
+            means[cell] = mean;
+            extinctionSteps[cell] = (lastAlive == length - 1) ? -1 : lastAlive + 1;
+            double deviation = (length == 0) ? 0 : Math.sqrt(Math.max(0, sumOfSquares / length - mean * mean));
+            periods[cell] = period(length, mean, deviation * CROSSING_BAND);
+        }
+
+        /**
+         * Find the mean number of steps between the column rising
+         * through the top of a band around its mean, having first
+         * fallen through the bottom of it.
+         * @param length The number of steps in the column.
+         * @param mean The mean of the column.
+         * @param band Half the width of the band.
+         * @return The mean period, or NaN if it rose fewer than twice.
+         */
+        private double period(int length, double mean, double band)
+        {
+            if(band <= 0) {
+                return Double.NaN;
+            }
+            double high = mean + band;
+            double low = mean - band;
+            boolean below = false;
+            int rises = 0;
+            int firstRise = 0, lastRise = 0;
+            for(int step = 0; step < length; step++) {
+                int count = column[step];
+                if(count < low) {
+                    below = true;
+                }
+                else if(below && count > high) {
+                    below = false;
+                    if(rises == 0) {
+                        firstRise = step;
+                    }
+                    lastRise = step;
+                    rises++;
+                }
+            }
+            return (rises < 2) ? Double.NaN : (double) (lastRise - firstRise) / (rises - 1);
+        }
+
+        /**
+         * Number the species of a run in the order they died out.
+         * Species dying out at the same step share a number.
+         * @param i The run, as an index into runs.
+         */
+        private void rankExtinctions(int i)
+        {
+            int base = i * species.length;
+            for(int s = 0; s < species.length; s++) {
+                int step = extinctionSteps[base + s];
+                int order = 0;
+                if(step >= 0) {
+                    order = 1;
+                    for(int other = 0; other < species.length; other++) {
+                        int otherStep = extinctionSteps[base + other];
+                        if(otherStep >= 0 && otherStep < step) {
+                            order++;
+                        }
+                    }
+                }
+                extinctionOrder[base + s] = order;
+            }
+        }
+    }
+
+    /**
+     * @return The number of runs measured.
+     */
+    public int getRunCount()
+    {
+        return runs.length;
+    }
+
+    /**
+     * @param i A run, numbered from 0 in the order given.
+     * @return Its index in the log.
+     */
+    public int getLogIndex(int i)
+    {
+        return runs[i];
+    }
+
+    /**
+     * @return Every species seen, in the order used by the tables.
+     */
+    public String[] getSpeciesNames()
+    {
+        return species.clone();
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return Its column in the tables, or -1 if it was never seen.
+     */
+    public int getSpecies(String name)
+    {
+        return Arrays.asList(species).indexOf(name);
+    }
+
+    /**
+     * @param i A run.
+     * @return The number of steps in the run.
+     */
+    public int getSteps(int i)
+    {
+        return steps[i];
+    }
+
+    /**
+     * @param i A run.
+     * @param s A species.
+     * @return The step the species died out at, or -1 if it survived.
+     */
+    public int getExtinctionStep(int i, int s)
+    {
+        return extinctionSteps[i * species.length + s];
+    }
+
+    /**
+     * @param i A run.
+     * @param s A species.
+     * @return 1 if the species was the first to die out, 2 if the
+     *         second, and so on; 0 if it survived.
+     */
+    public int getExtinctionOrder(int i, int s)
+    {
+        return extinctionOrder[i * species.length + s];
+    }
+
+    /**
+     * @param i A run.
+     * @return One bit, 1 << s, for each species s that survived.
+     */
+    public long getSurvivors(int i)
+    {
+        return survivors[i];
+    }
+
+    /**
+     * @param i A run.
+     * @param s A species.
+     * @return The largest count of the species in the run.
+     */
+    public int getPeak(int i, int s)
+    {
+        return peaks[i * species.length + s];
+    }
+
+    /**
+     * @param i A run.
+     * @param s A species.
+     * @return The mean count of the species over the run.
+     */
+    public double getMean(int i, int s)
+    {
+        return means[i * species.length + s];
+    }
+
+    /**
+     * @param i A run.
+     * @param s A species.
+     * @return The mean period of the species' rise and fall, in steps,
+     *         or NaN if it did not rise and fall at least twice.
+     */
+    public double getPeriod(int i, int s)
+    {
+        return periods[i * species.length + s];
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * A test of whether a logged run should be chosen, made on its
+ * summary alone.
+ */
+public interface RunFilter
+{
+    /**
+     * @param run The summary of a run.
+     * @return true if the run should be chosen.
+     */
+    public boolean accept(RunSummary run);
+}
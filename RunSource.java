@@ -0,0 +1,47 @@
+import java.io.IOException;
+
+/**
+ * Somewhere logged runs can be read from, numbered from 0. The
+ * counts of a run may be read from several threads at once.
+ */
+public interface RunSource
+{
+    /**
+     * @return The number of runs.
+     */
+    public int getRunCount();
+
+    /**
+     * @param run The index of a run.
+     * @return The number of steps recorded in the run.
+     * @throws IOException If the run cannot be read.
+     */
+    public int getSteps(int run) throws IOException;
+
+    /**
+     * @param run The index of a run.
+     * @return The name of each species in the run.
+     * @throws IOException If the run cannot be read.
+     */
+    public String[] getSpeciesNames(int run) throws IOException;
+
+    /**
+     * Return the index of a species in a run.
+     * @param run The index of a run.
+     * @param name The name of the species.
+     * @return Its index, or -1 if the run does not record it.
+     * @throws IOException If the run cannot be read.
+     */
+    public int getSpecies(int run, String name) throws IOException;
+
+    /**
+     * Return the count of one species at every step of a run, reusing
+     * an array if it is big enough.
+     * @param run The index of a run.
+     * @param species The index of the species.
+     * @param into The array to fill, or null.
+     * @return The array filled: into, or a new array if into was too small.
+     * @throws IOException If the run cannot be read.
+     */
+    public int[] getColumn(int run, int species, int[] into) throws IOException;
+}
@@ -0,0 +1,190 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A summary of one logged run: how it was set up, how long it lasted,
+ * and the first, lowest, highest and final count of each species,
+ * with the step each species died out at.
+ *
+ * Summaries are small, so questions about many runs can be answered
+ * from them without reading the counts of every step.
+ */
+public class RunSummary
+{
+    // How the run was set up, by name.
+    private Map<String, String> properties;
+    // The number of steps in the run.
+    private int steps;
+    // The name of each species in the run.
+    private String[] species;
+    // For each species: its first, lowest, highest and final count,
+    // and the step it died out at, or -1 if it survived.
+    private int[] firsts;
+    private int[] minimums;
+    private int[] maximums;
+    private int[] finals;
+    private int[] extinctions;
+
+    /**
+     * @param properties How the run was set up.
+     * @param steps The number of steps in the run.
+     * @param species The name of each species in the run.
+     * @param firsts The count of each species at the first step.
+     * @param minimums The lowest count of each species.
+     * @param maximums The highest count of each species.
+     * @param finals The count of each species at the last step.
+     * @param extinctions The step each species died out at, or -1.
+     */
+    public RunSummary(Map<String, String> properties, int steps, String[] species,
+                      int[] firsts, int[] minimums, int[] maximums,
+                      int[] finals, int[] extinctions)
+    {
+        this.properties = Collections.unmodifiableMap(properties);
+        this.steps = steps;
+        this.species = species;
+        this.firsts = firsts;
+        this.minimums = minimums;
+        this.maximums = maximums;
+        this.finals = finals;
+        this.extinctions = extinctions;
+    }
+
+    /**
+     * @return How the run was set up, by name.
+     */
+    public Map<String, String> getProperties()
+    {
+        return properties;
+    }
+
+    /**
+     * @param name The name of a property, such as "seed".
+     * @return Its value, or null if it was not recorded.
+     */
+    public String getProperty(String name)
+    {
+        return properties.get(name);
+    }
+
+    /**
+     * @return The depth of the field, or 0 if not recorded.
+     */
+    public int getDepth()
+    {
+        String depth = properties.get("depth");
+        return (depth == null) ? 0 : Integer.parseInt(depth);
+    }
+
+    /**
+     * @return The width of the field, or 0 if not recorded.
+     */
+    public int getWidth()
+    {
+        String width = properties.get("width");
+        return (width == null) ? 0 : Integer.parseInt(width);
+    }
+
+    /**
+     * @return The number of steps in the run.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @return The name of each species in the run.
+     */
+    public String[] getSpeciesNames()
+    {
+        return species.clone();
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return true if the run logged the species.
+     */
+    public boolean hasSpecies(String name)
+    {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return Its count at the first step, or 0 if not logged.
+     */
+    public int getFirst(String name)
+    {
+        int index = indexOf(name);
+        return (index < 0) ? 0 : firsts[index];
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return Its lowest count, or 0 if not logged.
+     */
+    public int getMinimum(String name)
+    {
+        int index = indexOf(name);
+        return (index < 0) ? 0 : minimums[index];
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return Its highest count, or 0 if not logged.
+     */
+    public int getMaximum(String name)
+    {
+        int index = indexOf(name);
+        return (index < 0) ? 0 : maximums[index];
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return Its count at the last step, or 0 if not logged.
+     */
+    public int getFinal(String name)
+    {
+        int index = indexOf(name);
+        return (index < 0) ? 0 : finals[index];
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return The step it died out at, -1 if it survived, or 0 if it
+     *         was never logged.
+     */
+    public int getExtinctionStep(String name)
+    {
+        int index = indexOf(name);
+        return (index < 0) ? 0 : extinctions[index];
+    }
+
+    /**
+     * @param name The name of a species.
+     * @return Its index in the run, or -1 if not logged.
+     */
+    private int indexOf(String name)
+    {
+        return Arrays.asList(species).indexOf(name);
+    }
+
+    /**
+     * The summary as text, for reports.
+     */
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(steps).append(" steps ").append(properties);
+        for(int i = 0; i < species.length; i++) {
+            text.append(' ').append(species[i]).append('=')
+                .append(firsts[i]).append('/').append(minimums[i]).append('/')
+                .append(maximums[i]).append('/').append(finals[i]);
+            if(extinctions[i] >= 0) {
+                text.append(" extinct@").append(extinctions[i]);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -1,5 +1,10 @@
 import java.util.*;
 import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
@@ -21,21 +26,56 @@ public class Simulator
     private static final double FOX_CREATION_PROBABILITY = 0.02;
     // The probability that a rabbit will be created in any given grid position.
     private static final double RABBIT_CREATION_PROBABILITY = 0.08;    
+    // The probability that an animal created with the field is diseased.
+    private static final double DISEASE_CREATION_PROBABILITY = 0.01;
+    // The colours rabbits, foxes and traps are drawn in.
+    private static final Color RABBIT_COLOR = Color.orange;
+    private static final Color FOX_COLOR = Color.blue;
+    private static final Color TRAP_COLOR = Color.red;
+    // The width and height in pixels of one location in a snapshot.
+    private static final int SNAPSHOT_SCALE = 4;
 
-    // List of animals in the field.
-    private List<Animal> animals;
+    // The rabbits in the field.
+    private List<Rabbit> rabbits;
+    // The foxes in the field.
+    private List<Fox> foxes;
+    // Rabbits born during the current step.
+    private List<Rabbit> newRabbits;
+    // Foxes born during the current step.
+    private List<Fox> newFoxes;
     // List of objects in the field.
     private List<Objects> objects;
     // The current state of the field.
     private Field field;
+    // Spreads disease between neighbouring animals.
+    private Contagion contagion;
+    // Creates the animals and traps of a new world.
+    private WorldGenerator generator;
+    // The seed the current world was created from.
+    private long seed;
+    // The source of every random choice made while the simulation
+    // runs, reseeded from the seed of each new world.
+    private Random rand;
     // The current step of the simulation.
     private int step;
-    // A graphical view of the simulation.
+    // A graphical view of the simulation, or null if headless.
     private SimulatorView view;
+    // Statistics on what is in the field.
+    private FieldStats stats;
+    // Exports each step as an image, if set.
+    private FrameExporter exporter;
+    // Times each phase of a step, when switched on.
+    private StepTimer timer;
+    // Shows the simulation through JMX, or null if not registered.
+    private SimulatorMonitor monitor;
     // The log for this simulation
     public Logger logger;
     // If the simulation has been paused
-    private boolean paused = false;
+    private volatile boolean paused = false;
+    // If a thread is running steps, or taking a step or snapshot for
+    // JMX. Only the thread that set it may touch the world until it
+    // is cleared.
+    private final AtomicBoolean running = new AtomicBoolean();
     // The remaining number of steps to be taken
     private int stepsToBeTaken;
     // Wether the simulation has beed logged
@@ -55,6 +95,21 @@ public class Simulator
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width)
+    {
+        this(depth, width, false);
+    }
+    
+    /**
+     * Create a simulation field with the given size, with or without
+     * a graphical view. A headless simulation can run on a machine
+     * with no display. A simulation with a view is shown through JMX;
+     * a headless one only if the system property simulator.jmx is true,
+     * as batch jobs may create a great many.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless If true, no view is created.
+     */
+    public Simulator(int depth, int width, boolean headless)
     {
         if(width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be greater than zero.");
@@ -63,18 +118,34 @@ public class Simulator
             width = DEFAULT_WIDTH;
         }
         
-        animals = new ArrayList<Animal>();
+        rabbits = new ArrayList<Rabbit>();
+        foxes = new ArrayList<Fox>();
+        newRabbits = new ArrayList<Rabbit>();
+        newFoxes = new ArrayList<Fox>();
         objects = new ArrayList<Objects>();
-        field = new Field(depth, width);
+        rand = new Random();
+        field = new Field(depth, width, rand);
+        contagion = new Contagion(depth, width, rand);
+        generator = new WorldGenerator(TRAP_CREATION_PROBABILITY, FOX_CREATION_PROBABILITY,
+                                       RABBIT_CREATION_PROBABILITY, DISEASE_CREATION_PROBABILITY);
 
-        // Create a view of the state of each location in the field.
-        view = new SimulatorView(this, depth, width);
-        view.setColor(Rabbit.class, Color.orange);
-        view.setColor(Fox.class, Color.blue);
-        view.setColor(Trap.class, Color.red);
+        stats = new FieldStats();
+        timer = new StepTimer();
+
+        if(!headless) {
+            // Create a view of the state of each location in the field.
+            view = new SimulatorView(this, depth, width);
+            view.setColor(Rabbit.class, RABBIT_COLOR);
+            view.setColor(Fox.class, FOX_COLOR);
+            view.setColor(Trap.class, TRAP_COLOR);
+        }
 
         // Setup a valid starting point.
         reset();
+        if(!headless || Boolean.getBoolean("simulator.jmx")) {
+            monitor = SimulatorMonitor.register(this);
+            publish();
+        }
     }
     
     /**
@@ -94,6 +165,32 @@ public class Simulator
     	System.out.println("Simulation resuming");
     }
     
+    /**
+     * Resume the simulation after being paused, on a thread of its own
+     * The simulation is claimed before the thread starts, so of two
+     * calls close together only one resumes it
+     * @return true if it was resumed, false if it was already running
+     *         or had no steps left to take
+     */
+    public boolean resumeInBackground() {
+    	if(!running.compareAndSet(false, true)) {
+    		return false;
+    	}
+    	final int numSteps = getRemainingSteps();
+    	if(numSteps <= 0) {
+    		running.set(false);
+    		return false;
+    	}
+    	paused = false;
+    	Thread thread = new Thread("Simulation") {
+    		public void run() {
+    			runSteps(numSteps);
+    		}
+    	};
+    	thread.start();
+    	return true;
+    }
+    
     /**
      * Return the remaining number of steps to be taken
      * @return int Remaining number of steps to go
@@ -114,54 +211,233 @@ public class Simulator
     /**
      * Run the simulation from its current state for the given number of steps.
      * Stop before the given number of steps if it ceases to be viable.
+     * Does nothing if the simulation is already running.
      * @param numSteps The number of steps to run for.
      */
     public void simulate(int numSteps)
     {
     	if(numSteps > 0)
     	{
-	    	int step = 1;
-	        while(step <= numSteps && view.isViable(field) && !paused) {
-	            simulateOneStep();
-	            step++;
-	        }
-	        if(!view.isViable(field))
-	        {
-	        	logged = true;
-	        	logger.finish();
-	        }
+    		if(!running.compareAndSet(false, true)) {
+    			System.out.println("The simulation is already running.");
+    			return;
+    		}
+    		runSteps(numSteps);
     	}
     }
     
+    /**
+     * Run steps on a simulation already claimed by this thread, and
+     * then release it.
+     * @param numSteps The number of steps to run for.
+     */
+    private void runSteps(int numSteps)
+    {
+    	try {
+    		if(numSteps > 0)
+    		{
+	    		stepsToBeTaken = this.step + numSteps;
+	    		int step = 1;
+		        while(step <= numSteps && stats.isViable(field) && !paused) {
+		            simulateOneStep();
+		            step++;
+		        }
+		        if(!stats.isViable(field))
+		        {
+		        	logged = true;
+		        	logger.finish();
+		        }
+    		}
+    	}
+    	finally {
+    		running.set(false);
+    	}
+    }
+    
+    /**
+     * Take a single step, unless the simulation is already running.
+     * @return true if the step was taken.
+     */
+    public boolean trySimulateOneStep()
+    {
+    	if(!running.compareAndSet(false, true)) {
+    		return false;
+    	}
+    	try {
+    		simulateOneStep();
+    	}
+    	finally {
+    		running.set(false);
+    	}
+    	return true;
+    }
+    
     /**
      * Run the simulation from its current state for a single step.
-     * Iterate over the whole field updating the state of each
-     * fox and rabbit.
+     * Each species is updated in its own phase, in a fixed order:
+     * <ol>
+     * <li>Rabbits age, breed and move. Foxes have not moved yet.</li>
+     * <li>Foxes age, breed and hunt the rabbits left after the
+     *     rabbit phase, including rabbits born in it.</li>
+     * <li>Objects react to whichever animal now stands on them.</li>
+     * <li>Disease spreads between the surviving animals.</li>
+     * </ol>
+     * Dead animals are removed and newborns join their species
+     * before disease spreads, but newborns do not act until the
+     * following step.
+     * If the step timer is on, each phase is timed. Each step is also
+     * recorded as a Flight Recorder event, with the animals born,
+     * eaten, trapped and dying in it if that event is enabled.
      */
     public void simulateOneStep()
     {
+        StepEvent event = new StepEvent();
+        event.begin();
+        StepActivityEvent activity = new StepActivityEvent();
+        long start = timer.start();
+        long mark = start;
         step++;
-        // Provide space for newborn animals.
-        List<Animal> newAnimals = new ArrayList<Animal>();        
-        for(Iterator<Animal> it = animals.iterator(); it.hasNext(); ) {
-            Animal animal = it.next();
-            animal.act(newAnimals);
-            for(Iterator<Objects> it2 = objects.iterator(); it2.hasNext(); ) {
-            	Objects object = it2.next();
-            	if(object.getLocation().equals(animal.getLocation()))
-            	{object.react(animal);}
+        for(int i = 0; i < rabbits.size(); i++) {
+            rabbits.get(i).act(newRabbits, rand);
+        }
+        mark = timer.lap(StepTimer.RABBITS, mark);
+        int eaten = 0;
+        for(int i = 0; i < foxes.size(); i++) {
+            if(foxes.get(i).act(newFoxes, rand)) {
+                eaten++;
+            }
+        }
+        mark = timer.lap(StepTimer.FOXES, mark);
+        int trapped = resolveObjects();
+        int births = newRabbits.size() + newFoxes.size();
+        mark = timer.lap(StepTimer.OBJECTS, mark);
+
+        // Add the newly born foxes and rabbits to their populations.
+        rabbits.addAll(newRabbits);
+        newRabbits.clear();
+        int deaths = removeDead(rabbits);
+        foxes.addAll(newFoxes);
+        newFoxes.clear();
+        deaths += removeDead(foxes);
+        mark = timer.lap(StepTimer.POPULATIONS, mark);
+        spreadDisease();
+        mark = timer.lap(StepTimer.DISEASE, mark);
+
+        showStatus();
+        mark = timer.lap(StepTimer.STATUS, mark);
+        // Without a view the field is counted when the counts are first
+        // asked for, so count it here to time the counting on its own.
+        stats.getCountedClasses(field);
+        mark = timer.lap(StepTimer.COUNTING, mark);
+        if(exporter != null) {
+            exporter.capture(step, field);
+        }
+        mark = timer.lap(StepTimer.EXPORT, mark);
+        logger.addRecord();
+        timer.lap(StepTimer.LOGGING, mark);
+        timer.end(start, rabbits.size() + foxes.size());
+        publish();
+
+        event.end();
+        if(event.shouldCommit()) {
+            event.step = step;
+            event.rabbits = rabbits.size();
+            event.foxes = foxes.size();
+            event.objects = objects.size();
+            event.commit();
+        }
+        if(activity.isEnabled()) {
+            activity.step = step;
+            activity.births = births;
+            activity.deaths = deaths;
+            activity.eaten = eaten;
+            activity.trapped = trapped;
+            activity.commit();
+        }
+    }
+
+    /**
+     * Publish the counts of the current step to the JMX monitor, if
+     * there is one.
+     */
+    private void publish()
+    {
+        if(monitor == null) {
+            return;
+        }
+        Map<String, Integer> populations = new LinkedHashMap<String, Integer>();
+        int occupied = 0;
+        for(Class<?> counted : stats.getCountedClasses(field)) {
+            int count = stats.getCount(field, counted);
+            populations.put(counted.getName(), count);
+            occupied += count;
+        }
+        monitor.publish(step, populations, rabbits.size(), foxes.size(), objects.size(),
+                        field.getDepth() * field.getWidth() - occupied);
+    }
+
+    /**
+     * Let each object react to an animal occupying its location.
+     * Animals stand on top of the (invisible) objects they walk
+     * into, so the occupant is read straight from the field rather
+     * than by comparing every animal with every object.
+     * @return The number of animals the objects killed.
+     */
+    private int resolveObjects()
+    {
+        int killed = 0;
+        for(int i = 0; i < objects.size(); i++) {
+            Objects object = objects.get(i);
+            Location location = object.getLocation();
+            if(location != null) {
+                Object occupant = field.getObjectAt(location);
+                if(occupant instanceof Animal) {
+                    Animal animal = (Animal) occupant;
+                    boolean alive = animal.isAlive();
+                    object.react(animal);
+                    if(alive && !animal.isAlive()) {
+                        killed++;
+                    }
+                }
             }
-            // If the animal is dead, lets get rid of it
-            if(! animal.isAlive()) {
-                it.remove();
+        }
+        return killed;
+    }
+
+    /**
+     * Let disease pass between neighbouring animals. The whole field
+     * is handled in one pass over the contagion bitsets.
+     */
+    private void spreadDisease()
+    {
+        contagion.clear();
+        for(int i = 0; i < rabbits.size(); i++) {
+            contagion.mark(rabbits.get(i));
+        }
+        for(int i = 0; i < foxes.size(); i++) {
+            contagion.mark(foxes.get(i));
+        }
+        contagion.spread(field);
+    }
+
+    /**
+     * Remove the dead animals from a population, keeping the
+     * survivors in their current order.
+     * @param animals The population to compact.
+     * @return The number of dead animals removed.
+     */
+    private static <T extends Animal> int removeDead(List<T> animals)
+    {
+        int alive = 0;
+        for(int i = 0; i < animals.size(); i++) {
+            T animal = animals.get(i);
+            if(animal.isAlive()) {
+                animals.set(alive++, animal);
             }
         }
-               
-        // Add the newly born foxes and rabbits to the main lists.
-        animals.addAll(newAnimals);
-        view.showStatus(step, field);
-        String logMessage = view.stats.getPopulationDetails(field);
-        logger.addRecord(logMessage);
+        int dead = animals.size() - alive;
+        animals.subList(alive, animals.size()).clear();
+        return dead;
     }
         
     /**
@@ -169,45 +445,108 @@ public class Simulator
      */
     public void reset()
     {
+        reset(Randomizer.getRandom().nextLong());
+    }
+    
+    /**
+     * Reset the simulation to the starting position made from a given
+     * seed. The same seed always lays out the same world, and the
+     * animals then make the same choices, so the whole run repeats.
+     * @param newSeed The seed of the new world.
+     */
+    public void reset(long newSeed)
+    {
+        WorldResetEvent event = new WorldResetEvent();
+        event.begin();
+        event.stepsTaken = step;
         step = 0;
-        animals.clear();
-        populate();
+        rabbits.clear();
+        foxes.clear();
+        objects.clear();
+        populate(newSeed);
         logged = false;
         // Show the starting state in the view.
-        view.showStatus(step, field);
+        showStatus();
+        publish();
+        if(logger != null) {
+            // A run reset before it finished is not worth analysing.
+            logger.abandon();
+        }
         logger = new Logger(this);
+        if(event.shouldCommit()) {
+            event.seed = seed;
+            event.depth = field.getDepth();
+            event.width = field.getWidth();
+            event.commit();
+        }
+    }
+    
+    /**
+     * Bring the view and statistics up to date with the field.
+     * Without a view the counts are simply marked out of date, and
+     * are recounted from the field when next needed.
+     */
+    private void showStatus()
+    {
+        if(view != null) {
+            view.showStatus(step, field);
+        }
+        else {
+            stats.reset();
+        }
     }
     
     /**
      * Randomly populate the field with foxes, rabbits and traps.
+     * @param newSeed The seed of the new world.
      */
-    private void populate()
+    private void populate(long newSeed)
     {
-        Random rand = Randomizer.getRandom();
         field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                if(rand.nextDouble() <= TRAP_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Trap trap = new Trap(field, location);
-                    objects.add(trap);
-                    field.place(trap, location);
-                }
-                else if(rand.nextDouble() <= FOX_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Fox fox = new Fox(true, field, location);
-                    animals.add(fox);
-                    field.place(fox, location);
-                }
-                else if(rand.nextDouble() <= RABBIT_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Rabbit rabbit = new Rabbit(true, field, location);
-                    animals.add(rabbit);
-                    field.place(rabbit, location);
-                }
-                // else leave the location empty.
-            }
-        }
+        seed = newSeed;
+        // A stream apart from the ones the world is laid out with.
+        rand.setSeed(WorldGenerator.mix(~newSeed));
+        generator.populate(field, seed, rabbits, foxes, objects);
+    }
+    
+    /**
+     * Set how the field is populated when it is next reset, in place
+     * of the usual probabilities and distribution.
+     * @param newGenerator The generator of later worlds.
+     */
+    public void setGenerator(WorldGenerator newGenerator)
+    {
+        generator = newGenerator;
+    }
+    
+    /**
+     * Set how the animals and traps are spread over the field when
+     * it is next reset.
+     * @param distribution The spatial distribution to use.
+     */
+    public void setDistribution(SpatialDistribution distribution)
+    {
+        generator.setDistribution(distribution);
+    }
+    
+    /**
+     * Describe how the current run was set up, so that logged runs
+     * can be told apart when they are analysed.
+     * @return The size of the field, the seed of the world and the
+     *         probabilities it was created with, by name.
+     */
+    public Map<String, String> getParameters()
+    {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("depth", Integer.toString(field.getDepth()));
+        parameters.put("width", Integer.toString(field.getWidth()));
+        parameters.put("seed", Long.toString(seed));
+        parameters.put("trapProbability", Double.toString(generator.getTrapProbability()));
+        parameters.put("foxProbability", Double.toString(generator.getFoxProbability()));
+        parameters.put("rabbitProbability", Double.toString(generator.getRabbitProbability()));
+        parameters.put("diseaseProbability", Double.toString(generator.getDiseaseProbability()));
+        parameters.put("distribution", generator.getDistribution().getClass().getName());
+        return parameters;
     }
     
     /**
@@ -226,23 +565,137 @@ public class Simulator
     	return field;
     }
     
+    /**
+     * Returns the statistics on what is in the simulators field
+     * @return the statistics on the field
+     */
+    public FieldStats getStats() {
+    	return stats;
+    }
+    
+    /**
+     * Returns whether the simulation is running steps
+     * @return true if it is running
+     */
+    public boolean isRunning() {
+    	return running.get();
+    }
+    
+    /**
+     * Returns whether the simulation has been paused
+     * @return true if it is paused
+     */
+    public boolean isPaused() {
+    	return paused;
+    }
+    
+    /**
+     * Save a picture of the field as it is now, drawn in the same
+     * colours as the view. The simulation must not be running
+     * @param directory The directory to save it in
+     * @return The picture file, named after the current step
+     * @throws IOException If the picture cannot be saved
+     * @throws IllegalStateException If the simulation is running
+     */
+    public File snapshot(File directory) throws IOException {
+    	if(!running.compareAndSet(false, true)) {
+    		throw new IllegalStateException("Pause the simulation first.");
+    	}
+    	try {
+    		return savePicture(directory);
+    	}
+    	finally {
+    		running.set(false);
+    	}
+    }
+    
+    /**
+     * Save a picture of the field, on a simulation claimed by this thread
+     * @param directory The directory to save it in
+     * @return The picture file
+     * @throws IOException If the picture cannot be saved
+     */
+    private File savePicture(File directory) throws IOException {
+    	SnapshotEvent event = new SnapshotEvent();
+    	event.begin();
+    	if(!directory.isDirectory() && !directory.mkdirs()) {
+    		throw new IOException("Cannot create " + directory);
+    	}
+    	// Never replace an earlier picture of the same step.
+    	File picture = new File(directory, String.format("step-%06d.png", step));
+    	for(int copy = 1; picture.exists(); copy++) {
+    		picture = new File(directory, String.format("step-%06d-%d.png", step, copy));
+    	}
+    	BufferedImage image = FrameExporter.render(field,
+    		new Class<?>[] { Rabbit.class, Fox.class, Trap.class },
+    		new Color[] { RABBIT_COLOR, FOX_COLOR, TRAP_COLOR }, SNAPSHOT_SCALE);
+    	if(!ImageIO.write(image, "png", picture)) {
+    		throw new IOException("No PNG writer available");
+    	}
+    	event.step = step;
+    	event.file = picture.getPath();
+    	event.commit();
+    	return picture;
+    }
+    
+    /**
+     * Stop showing the simulation through JMX, so it can be
+     * garbage collected once no longer used
+     */
+    public void dispose() {
+    	if(monitor != null) {
+    		monitor.unregister();
+    		monitor = null;
+    	}
+    }
+    
+    /**
+     * Returns the timer of the phases of each step. It is off until
+     * switched on with setEnabled
+     * @return the step timer
+     */
+    public StepTimer getTimer() {
+    	return timer;
+    }
+    
+    /**
+     * Export every following step as an image, drawn in the same
+     * colours as the view.
+     * @param newExporter The exporter to use, or null to stop exporting
+     */
+    public void setExporter(FrameExporter newExporter) {
+    	exporter = newExporter;
+    	if(exporter != null) {
+    		exporter.setColor(Rabbit.class, RABBIT_COLOR);
+    		exporter.setColor(Fox.class, FOX_COLOR);
+    		exporter.setColor(Trap.class, TRAP_COLOR);
+    	}
+    }
+    
     /**
      * Returns the SimulatorView being used by the simulator
-     * @return the SimulatorView being used by the simulator
+     * @return the SimulatorView being used by the simulator, or null
+     *         if the simulator is headless
      */
     public SimulatorView getView() {
     	return view;
     }
     
     /**
-     * Add multiple rabbits to the simulation
+     * Add multiple rabbits to the simulation. The free locations are
+     * all chosen in one pass and the view is only updated once.
+     * Nothing is added if there are not enough free locations.
      * @param count The number of rabbits to added to the simulation
      */
     public void addRabbits(int count) {
-    	if(count > 0 && count <= field.getLocationsLeft()){
-    	for(int counter = 0; counter < count; counter++) {
-    		addRabbit();
-    	}}
+        List<Location> locations = field.getRandomFreeLocations(count);
+        if(locations.size() == count) {
+            for(Location location : locations) {
+                rabbits.add(new Rabbit(true, field, location, rand));
+            }
+            showStatus();
+            publish();
+        }
     }
     
     /**
@@ -250,21 +703,28 @@ public class Simulator
      */
     public void addRabbit() {
         Location randomFreeLocation = field.getRandomFreeLocation();
-        Rabbit rabbit = new Rabbit(true, field, randomFreeLocation);
-        animals.add(rabbit);
+        Rabbit rabbit = new Rabbit(true, field, randomFreeLocation, rand);
+        rabbits.add(rabbit);
         field.place(rabbit, randomFreeLocation);
-        view.showStatus(step, field);
+        showStatus();
+        publish();
     }
     
     /**
-     * Add multiple foxes to the simulation
+     * Add multiple foxes to the simulation. The free locations are
+     * all chosen in one pass and the view is only updated once.
+     * Nothing is added if there are not enough free locations.
      * @param count The number of foxes to added to the simulation
      */
     public void addFoxes(int count) {
-    	if(count > 0 && count <= field.getLocationsLeft()){
-	    for(int counter = 0; counter < count; counter++) {
-	    	addFox();
-	    }}
+        List<Location> locations = field.getRandomFreeLocations(count);
+        if(locations.size() == count) {
+            for(Location location : locations) {
+                foxes.add(new Fox(true, field, location, rand));
+            }
+            showStatus();
+            publish();
+        }
     }
     
     /**
@@ -272,21 +732,28 @@ public class Simulator
      */
     public void addFox() {
         Location randomFreeLocation = field.getRandomFreeLocation();
-        Fox fox = new Fox(true, field, randomFreeLocation);
-        animals.add(fox);
+        Fox fox = new Fox(true, field, randomFreeLocation, rand);
+        foxes.add(fox);
         field.place(fox, randomFreeLocation);
-        view.showStatus(step, field);
+        showStatus();
+        publish();
     }
     
     /**
-     * Add multiple traps to the simulation
+     * Add multiple traps to the simulation. The free locations are
+     * all chosen in one pass and the view is only updated once.
+     * Nothing is added if there are not enough free locations.
      * @param count The number of trap to added to the simulation
      */
     public void addTraps(int count) {
-    	if(count > 0 && count <= field.getLocationsLeft()){
-    	for(int counter = 0; counter < count; counter++) {
-    		addTrap();
-    	}}
+        List<Location> locations = field.getRandomFreeLocations(count);
+        if(locations.size() == count) {
+            for(Location location : locations) {
+                objects.add(new Trap(field, location));
+            }
+            showStatus();
+            publish();
+        }
     }
     
     /**
@@ -297,6 +764,7 @@ public class Simulator
         Trap trap = new Trap(field, randomFreeLocation);
         objects.add(trap);
         field.place(trap, randomFreeLocation);
-        view.showStatus(step, field);
+        showStatus();
+        publish();
     }
 }
@@ -0,0 +1,128 @@
+import java.util.Map;
+
+/**
+ * What a running simulator shows and offers through JMX.
+ *
+ * Reading an attribute never waits for the simulation: the counts are
+ * those published at the end of the latest step.
+ */
+public interface SimulatorMXBean
+{
+    /**
+     * @return The latest step taken.
+     */
+    public int getStep();
+
+    /**
+     * @return The number of each kind of animal and object in the
+     *         field, by class name.
+     */
+    public Map<String, Integer> getPopulations();
+
+    /**
+     * @return The number of rabbits being simulated.
+     */
+    public int getRabbitCount();
+
+    /**
+     * @return The number of foxes being simulated.
+     */
+    public int getFoxCount();
+
+    /**
+     * @return The number of objects, such as traps, in the field.
+     */
+    public int getObjectCount();
+
+    /**
+     * @return The number of empty locations in the field.
+     */
+    public int getFreeCells();
+
+    /**
+     * @return The number of steps taken each second, lately.
+     */
+    public double getStepsPerSecond();
+
+    /**
+     * @return true if the simulation is running.
+     */
+    public boolean isRunning();
+
+    /**
+     * @return true if the simulation has been paused.
+     */
+    public boolean isPaused();
+
+    /**
+     * @return true if the phases of each step are being timed.
+     */
+    public boolean isTimingEnabled();
+
+    /**
+     * @param on true to time the phases of each step, false to stop.
+     */
+    public void setTimingEnabled(boolean on);
+
+    /**
+     * @return The mean time of each phase of a step, in microseconds.
+     */
+    public Map<String, Double> getPhaseMeanMicros();
+
+    /**
+     * @return The 99th percentile time of each phase of a step, and of
+     *         a whole step, in microseconds.
+     */
+    public Map<String, Double> getPhaseP99Micros();
+
+    /**
+     * @return true if the bytes allocated in each phase are being
+     *         counted while steps are timed.
+     */
+    public boolean isAllocationEnabled();
+
+    /**
+     * @param on true to count the bytes allocated in each phase while
+     *           steps are timed, false to stop.
+     */
+    public void setAllocationEnabled(boolean on);
+
+    /**
+     * @return The mean bytes allocated each step.
+     */
+    public double getBytesPerStep();
+
+    /**
+     * @return The mean bytes allocated for each animal in each step.
+     */
+    public double getBytesPerAnimalStep();
+
+    /**
+     * @return The time spent collecting garbage while allocation was
+     *         counted, in milliseconds.
+     */
+    public long getCollectionMillis();
+
+    /**
+     * Pause the simulation at the end of the current step.
+     */
+    public void pause();
+
+    /**
+     * Carry on with the steps left when the simulation was paused.
+     * The simulation must not be running, and must have steps left.
+     */
+    public void resume();
+
+    /**
+     * Take a single step. The simulation must not be running.
+     */
+    public void step();
+
+    /**
+     * Save a picture of the field. The simulation must not be running.
+     * @param directory The directory to save it in.
+     * @return The path of the picture.
+     */
+    public String snapshot(String directory);
+}
@@ -0,0 +1,277 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Shows a simulator through JMX, registered with the platform MBean
+ * server.
+ *
+ * At the end of each step the simulator publishes a snapshot of its
+ * counts, which attribute reads return. Reads never touch the field,
+ * so they need no lock and never hold up a step.
+ */
+public class SimulatorMonitor implements SimulatorMXBean
+{
+    // The numbers given to simulators as they are registered.
+    private static final AtomicInteger nextId = new AtomicInteger();
+    // How long a step rate is measured over, in nanoseconds.
+    private static final long RATE_WINDOW = 1000000000L;
+
+    // The simulator shown.
+    private Simulator simulator;
+    // The name it is registered under.
+    private ObjectName name;
+    // The counts published at the end of the latest step.
+    private volatile Snapshot latest;
+    // When the current step rate window started, and at which step.
+    // Only used on the simulation thread.
+    private long windowStart;
+    private int windowStep;
+    private double rate;
+
+    /**
+     * Register a monitor for a simulator.
+     * @param simulator The simulator to show.
+     * @return The monitor, or null if it could not be registered.
+     */
+    public static SimulatorMonitor register(Simulator simulator)
+    {
+        SimulatorMonitor monitor = new SimulatorMonitor(simulator);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            monitor.name = new ObjectName("foxesandrabbits:type=Simulator,id=" + nextId.incrementAndGet());
+            server.registerMBean(monitor, monitor.name);
+            return monitor;
+        }
+        catch(JMException e) {
+            System.out.println("Cannot register simulator with JMX \n" + e);
+            return null;
+        }
+    }
+
+    /**
+     * @param simulator The simulator to show.
+     */
+    private SimulatorMonitor(Simulator simulator)
+    {
+        this.simulator = simulator;
+        latest = new Snapshot(0, Collections.<String, Integer>emptyMap(), 0, 0, 0, 0, System.nanoTime(), 0);
+    }
+
+    /**
+     * Remove the monitor from the MBean server.
+     */
+    public void unregister()
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch(JMException e) {
+            // Already gone.
+        }
+    }
+
+    /**
+     * Publish the counts at the end of a step. Called on the thread
+     * running the simulation.
+     * @param step The step just taken.
+     * @param populations The number of each kind of animal and object.
+     * @param rabbits The number of rabbits.
+     * @param foxes The number of foxes.
+     * @param objects The number of objects.
+     * @param freeCells The number of empty locations.
+     */
+    public void publish(int step, Map<String, Integer> populations,
+                        int rabbits, int foxes, int objects, int freeCells)
+    {
+        long now = System.nanoTime();
+        if(step < windowStep) {
+            // The simulation was reset.
+            windowStart = now;
+            windowStep = step;
+            rate = 0;
+        }
+        else if(now - windowStart >= RATE_WINDOW) {
+            rate = (step - windowStep) * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowStep = step;
+        }
+        latest = new Snapshot(step, Collections.unmodifiableMap(populations),
+                              rabbits, foxes, objects, freeCells, now, rate);
+    }
+
+    public int getStep()
+    {
+        return latest.step;
+    }
+
+    public Map<String, Integer> getPopulations()
+    {
+        return latest.populations;
+    }
+
+    public int getRabbitCount()
+    {
+        return latest.rabbits;
+    }
+
+    public int getFoxCount()
+    {
+        return latest.foxes;
+    }
+
+    public int getObjectCount()
+    {
+        return latest.objects;
+    }
+
+    public int getFreeCells()
+    {
+        return latest.freeCells;
+    }
+
+    public double getStepsPerSecond()
+    {
+        Snapshot snapshot = latest;
+        // A simulation that has stopped is not stepping at all.
+        return (System.nanoTime() - snapshot.time > 2 * RATE_WINDOW) ? 0 : snapshot.rate;
+    }
+
+    public boolean isRunning()
+    {
+        return simulator.isRunning();
+    }
+
+    public boolean isPaused()
+    {
+        return simulator.isPaused();
+    }
+
+    public boolean isTimingEnabled()
+    {
+        return simulator.getTimer().isEnabled();
+    }
+
+    public void setTimingEnabled(boolean on)
+    {
+        simulator.getTimer().setEnabled(on);
+    }
+
+    public Map<String, Double> getPhaseMeanMicros()
+    {
+        StepTimer timer = simulator.getTimer();
+        Map<String, Double> means = new LinkedHashMap<String, Double>();
+        for(int i = 0; i < timer.getPhaseCount(); i++) {
+            means.put(timer.getPhaseName(i), timer.getPhase(i).getMean() / 1000);
+        }
+        means.put("step", timer.getSteps().getMean() / 1000);
+        return means;
+    }
+
+    public Map<String, Double> getPhaseP99Micros()
+    {
+        StepTimer timer = simulator.getTimer();
+        Map<String, Double> percentiles = new LinkedHashMap<String, Double>();
+        for(int i = 0; i < timer.getPhaseCount(); i++) {
+            percentiles.put(timer.getPhaseName(i), timer.getPhase(i).getPercentile(99) / 1000.0);
+        }
+        percentiles.put("step", timer.getSteps().getPercentile(99) / 1000.0);
+        return percentiles;
+    }
+
+    public boolean isAllocationEnabled()
+    {
+        return simulator.getTimer().isAllocationEnabled();
+    }
+
+    public void setAllocationEnabled(boolean on)
+    {
+        simulator.getTimer().setAllocationEnabled(on);
+    }
+
+    public double getBytesPerStep()
+    {
+        return simulator.getTimer().getBytesPerStep();
+    }
+
+    public double getBytesPerAnimalStep()
+    {
+        return simulator.getTimer().getBytesPerAnimalStep();
+    }
+
+    public long getCollectionMillis()
+    {
+        return simulator.getTimer().getCollectionMillis();
+    }
+
+    public void pause()
+    {
+        simulator.pause();
+    }
+
+    public void resume()
+    {
+        if(!simulator.resumeInBackground()) {
+            throw new IllegalStateException("The simulation is already running, or has no steps left.");
+        }
+    }
+
+    public void step()
+    {
+        if(!simulator.trySimulateOneStep()) {
+            throw new IllegalStateException("Pause the simulation first.");
+        }
+    }
+
+    public String snapshot(String directory)
+    {
+        try {
+            return simulator.snapshot(new File(directory)).getPath();
+        }
+        catch(IOException e) {
+            throw new IllegalStateException("Cannot save snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The counts at the end of one step. Never changed once made.
+     */
+    private static class Snapshot
+    {
+        private final int step;
+        private final Map<String, Integer> populations;
+        private final int rabbits, foxes, objects, freeCells;
+        private final long time;
+        private final double rate;
+
+        /**
+         * @param step The step.
+         * @param populations The number of each kind of animal and object.
+         * @param rabbits The number of rabbits.
+         * @param foxes The number of foxes.
+         * @param objects The number of objects.
+         * @param freeCells The number of empty locations.
+         * @param time When the step ended, from System.nanoTime.
+         * @param rate The number of steps taken each second, lately.
+         */
+        public Snapshot(int step, Map<String, Integer> populations, int rabbits, int foxes,
+                        int objects, int freeCells, long time, double rate)
+        {
+            this.step = step;
+            this.populations = populations;
+            this.rabbits = rabbits;
+            this.foxes = foxes;
+            this.objects = objects;
+            this.freeCells = freeCells;
+            this.time = time;
+            this.rate = rate;
+        }
+    }
+}
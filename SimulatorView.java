@@ -3,13 +3,19 @@ import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -17,6 +23,8 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * A graphical view of the simulation grid.
@@ -24,6 +32,12 @@ import javax.swing.JPanel;
  * representing its contents. It uses a default background colour.
  * Colours for each type of species can be defined using the
  * setColor method.
+ *
+ * The simulation thread tells the view about every step, which keeps
+ * the statistics up to date, but the screen is only redrawn on the
+ * Event Dispatch Thread, at most a set number of times a second.
+ * Steps that arrive between frames are merged into the next frame,
+ * and the simulation thread never waits for painting.
  * 
  * @author David J. Barnes and Michael Kolling
  * @author Alastair Fraser Dewar
@@ -36,22 +50,74 @@ public class SimulatorView extends JFrame implements ActionListener
 
 	// Colours used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
+    // Colour of a fully occupied part of the heat map.
+    private static final Color DENSE_COLOR = new Color(128, 0, 0);
 
     // Colour used for objects that have no defined color.
     private static final Color UNKNOWN_COLOR = Color.gray;
 
+    // The number of palette entries. Entries are stored as bytes.
+    private static final int PALETTE_SIZE = 256;
+    // The default limit on frames drawn per second.
+    private static final int DEFAULT_FRAME_RATE = 60;
+
     private final String STEP_PREFIX = "Step: ";
     private final String POPULATION_PREFIX = "Population: ";
     private JLabel stepLabel, population;
     private FieldView fieldView;
+    private PopulationChart chart;
     
     public Simulator sim;
     private Thread simulator = null;
     
     // A map for storing colours for participants in the simulation
 	private Map<Class, Color> colors;
-    // A statistics object computing and storing simulation information
-    public FieldStats stats;
+    // The classes seen in the field so far, and the RGB value each is
+    // drawn in. Index 0 is kept for empty locations.
+    private Class[] paletteClasses;
+    private int[] paletteRGB;
+    // The number of palette entries in use.
+    private int paletteSize;
+    // How many locations hold each palette entry.
+    private int[] paletteCounts;
+    // The palette entry at each location, in row-major order.
+    private byte[] entries;
+    // The field last drawn. A different field is drawn in full.
+    private Field drawnField;
+    // Whether the whole field must be drawn again at the next update.
+    private boolean redrawAll;
+
+    // Guards what is handed from the simulation thread to the Event
+    // Dispatch Thread: the entries, the palette and the pending frame.
+    private final Object frameLock = new Object();
+    // The locations changed since the last frame, each listed once.
+    private int[] pendingCells;
+    private int pendingCount;
+    private long[] pendingMarks;
+    // Whether the next frame must draw every location.
+    private boolean pendingAll;
+    // The step and palette counts to show in the next frame, and how
+    // many updates there have been.
+    private int pendingStep;
+    private int[] pendingCounts;
+    private int pendingUpdates;
+    // What the frame being drawn shows. Only used on the EDT.
+    private int[] frameCells;
+    private int[] frameCounts;
+    private int[] framePalette;
+    private Class[] frameClasses;
+    private int shownUpdates;
+    // Whether a frame has been posted to the EDT or is waiting on
+    // the frame timer.
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    // When the last frame was drawn, from System.nanoTime().
+    private volatile long lastFrame;
+    // The shortest time between frames, in nanoseconds.
+    private volatile long frameInterval;
+    // Delays a frame that would follow the last one too soon.
+    private Timer frameTimer;
+    // The simulator's statistics, kept up to date by the view
+    private FieldStats stats;
 
     private JMenuItem menuItemPause;
     
@@ -64,8 +130,30 @@ public class SimulatorView extends JFrame implements ActionListener
     {
     	sim = newSim;
     	
-        stats = new FieldStats();
+        stats = sim.getStats();
         colors = new LinkedHashMap<Class, Color>();
+        paletteClasses = new Class[PALETTE_SIZE];
+        paletteRGB = new int[PALETTE_SIZE];
+        paletteCounts = new int[PALETTE_SIZE];
+        paletteRGB[0] = EMPTY_COLOR.getRGB();
+        paletteSize = 1;
+        entries = new byte[height * width];
+        redrawAll = true;
+        pendingCells = new int[64];
+        pendingMarks = new long[(height * width + 63) >>> 6];
+        pendingCounts = new int[PALETTE_SIZE];
+        frameCells = new int[64];
+        frameCounts = new int[PALETTE_SIZE];
+        framePalette = new int[PALETTE_SIZE];
+        frameClasses = new Class[PALETTE_SIZE];
+        setFrameRate(DEFAULT_FRAME_RATE);
+        frameTimer = new Timer(0, new ActionListener() {
+            public void actionPerformed(ActionEvent e)
+            {
+                drawFrame();
+            }
+        });
+        frameTimer.setRepeats(false);
 
         setTitle("Fox and Rabbit Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -143,10 +231,12 @@ public class SimulatorView extends JFrame implements ActionListener
         setJMenuBar(menuBar);
         
         fieldView = new FieldView(height, width);
+        chart = new PopulationChart();
 
         Container contents = getContentPane();
         contents.add(stepLabel, BorderLayout.NORTH);
         contents.add(fieldView, BorderLayout.CENTER);
+        contents.add(chart, BorderLayout.EAST);
         contents.add(population, BorderLayout.SOUTH);
         pack();
         setVisible(true);
@@ -173,7 +263,51 @@ public class SimulatorView extends JFrame implements ActionListener
      */
     public void setColor(Class anyClass, Color color)
     {
-        colors.put(anyClass, color);
+        synchronized(frameLock) {
+            colors.put(anyClass, color);
+            for(int i = 1; i < paletteSize; i++) {
+                if(paletteClasses[i] == anyClass) {
+                    paletteRGB[i] = color.getRGB();
+                    redrawAll = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Limit how often the field is redrawn.
+     * @param framesPerSecond The most frames to draw in a second.
+     *                        Must be greater than zero.
+     */
+    public void setFrameRate(int framesPerSecond)
+    {
+        frameInterval = 1000000000L / framesPerSecond;
+    }
+
+    /**
+     * Return the palette entry for an animal/object, adding one if
+     * its class has not been seen before. There are only ever a few
+     * classes, so a linear search is quicker than a map lookup.
+     * @param object The animal/object, or null for an empty location.
+     * @return The palette index to draw the location with.
+     */
+    private int paletteIndex(Object object)
+    {
+        if(object == null) {
+            return 0;
+        }
+        Class<? extends Object> anyClass = object.getClass();
+        for(int i = 1; i < paletteSize; i++) {
+            if(paletteClasses[i] == anyClass) {
+                return i;
+            }
+        }
+        if(paletteSize == PALETTE_SIZE) {
+            throw new IllegalStateException("Too many kinds of animal/object to draw");
+        }
+        paletteClasses[paletteSize] = anyClass;
+        paletteRGB[paletteSize] = getColor(anyClass).getRGB();
+        return paletteSize++;
     }
 
     /**
@@ -193,38 +327,187 @@ public class SimulatorView extends JFrame implements ActionListener
     }
 
     /**
-     * Show the current status of the field.
+     * Show the current status of the field. The statistics are
+     * brought up to date straight away, using only the locations
+     * that have changed since the last update; the first update of a
+     * field, and the first after the field is cleared, looks at
+     * everything. The screen catches up at the next frame.
      * @param step Which iteration step it is.
      * @param field The field whose status is to be displayed.
      */
     public void showStatus(int step, Field field)
     {
-        if(!isVisible()) {
-            setVisible(true);
+        synchronized(frameLock) {
+            if(field != drawnField) {
+                field.setChangeTracking(true);
+                drawnField = field;
+                redrawAll = true;
+            }
+            if(redrawAll || field.allChanged()) {
+                updateAll(field);
+            }
+            else {
+                updateChanges(field);
+            }
+            field.clearChanges();
+            redrawAll = false;
+            pendingStep = step;
+            pendingUpdates++;
+            System.arraycopy(paletteCounts, 0, pendingCounts, 0, paletteSize);
         }
-            
-        stepLabel.setText(STEP_PREFIX + step);
+
         stats.reset();
-        
-        fieldView.preparePaint();
+        for(int i = 1; i < paletteSize; i++) {
+            if(paletteCounts[i] > 0) {
+                stats.incrementCount(paletteClasses[i], paletteCounts[i]);
+            }
+        }
+        stats.countFinished();
+        chart.record(step, paletteClasses, paletteRGB, paletteCounts, 1, paletteSize);
+        scheduleFrame(false);
+    }
 
+    /**
+     * Recount every location of the field, and have the next frame
+     * draw all of them.
+     * @param field The field to look at.
+     */
+    private void updateAll(Field field)
+    {
+        Arrays.fill(paletteCounts, 0);
+        int index = 0;
         for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object object = field.getObjectAt(row, col);
-                if(object != null) {
-                    stats.incrementCount(object.getClass());
-                    fieldView.drawMark(col, row, getColor(object.getClass()));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
+            for(int col = 0; col < field.getWidth(); col++, index++) {
+                int entry = paletteIndex(field.getObjectAt(row, col));
+                paletteCounts[entry]++;
+                entries[index] = (byte) entry;
+            }
+        }
+        for(int i = 0; i < pendingCount; i++) {
+            pendingMarks[pendingCells[i] >>> 6] = 0L;
+        }
+        pendingCount = 0;
+        pendingAll = true;
+    }
+
+    /**
+     * Bring the counts up to date from the locations of the field
+     * that have changed, and add those locations to the next frame.
+     * @param field The field to look at.
+     */
+    private void updateChanges(Field field)
+    {
+        int[] changes = field.getChanges();
+        int width = field.getWidth();
+        for(int i = 0; i < field.getChangeCount(); i++) {
+            int index = changes[i];
+            int entry = paletteIndex(field.getObjectAt(index / width, index % width));
+            int old = entries[index] & 0xff;
+            if(entry != old) {
+                paletteCounts[old]--;
+                paletteCounts[entry]++;
+                entries[index] = (byte) entry;
+                long bit = 1L << index;
+                if(!pendingAll && (pendingMarks[index >>> 6] & bit) == 0) {
+                    pendingMarks[index >>> 6] |= bit;
+                    if(pendingCount == pendingCells.length) {
+                        pendingCells = Arrays.copyOf(pendingCells, pendingCount * 2);
+                    }
+                    pendingCells[pendingCount++] = index;
                 }
             }
         }
-        stats.countFinished();
+    }
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
-        fieldView.repaint();
-        
+    /**
+     * Arrange for a frame to be drawn on the Event Dispatch Thread,
+     * unless one already is. The frame is delayed if it would come
+     * too soon after the last one.
+     * @param wait Whether to wait a full frame interval regardless.
+     */
+    private void scheduleFrame(boolean wait)
+    {
+        if(frameScheduled.compareAndSet(false, true)) {
+            long delay = wait ? frameInterval : lastFrame + frameInterval - System.nanoTime();
+            if(delay <= 0) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        drawFrame();
+                    }
+                });
+            }
+            else {
+                frameTimer.setInitialDelay((int) Math.max(1, delay / 1000000));
+                frameTimer.restart();
+            }
+        }
+    }
+
+    /**
+     * Draw everything that has changed since the last frame. This
+     * runs on the Event Dispatch Thread, and only holds the frame
+     * lock while it takes the pending frame.
+     */
+    private void drawFrame()
+    {
+        lastFrame = System.nanoTime();
+        boolean all;
+        int count, step, size, updates;
+        synchronized(frameLock) {
+            int[] taken = pendingCells;
+            pendingCells = frameCells;
+            frameCells = taken;
+            count = pendingCount;
+            for(int i = 0; i < count; i++) {
+                pendingMarks[frameCells[i] >>> 6] = 0L;
+            }
+            pendingCount = 0;
+            all = pendingAll;
+            pendingAll = false;
+            step = pendingStep;
+            updates = pendingUpdates;
+            size = paletteSize;
+            System.arraycopy(pendingCounts, 0, frameCounts, 0, size);
+            System.arraycopy(paletteRGB, 0, framePalette, 0, size);
+            System.arraycopy(paletteClasses, 0, frameClasses, 0, size);
+        }
+
+        // Entries may already hold later steps. Any location changed
+        // since the frame was taken is listed again in the next frame.
+        if(all) {
+            fieldView.drawAll(entries, framePalette);
+        }
+        else if(count > 0) {
+            fieldView.drawCells(frameCells, count, entries, framePalette);
+        }
+
+        if(!isVisible()) {
+            setVisible(true);
+        }
+        if(updates != shownUpdates) {
+            stepLabel.setText(STEP_PREFIX + step);
+            StringBuffer buffer = new StringBuffer(POPULATION_PREFIX);
+            for(int i = 1; i < size; i++) {
+                buffer.append(frameClasses[i].getName());
+                buffer.append(": ");
+                buffer.append(frameCounts[i]);
+                buffer.append(' ');
+            }
+            population.setText(buffer.toString());
+            chart.repaint();
+            shownUpdates = updates;
+        }
+
+        frameScheduled.set(false);
+        // Catch up with anything that arrived while drawing.
+        boolean behind;
+        synchronized(frameLock) {
+            behind = pendingAll || pendingCount > 0 || pendingUpdates != shownUpdates;
+        }
+        if(behind) {
+            scheduleFrame(true);
+        }
     }
 
     /**
@@ -297,16 +580,18 @@ public class SimulatorView extends JFrame implements ActionListener
 			//analyser.checkSuccessor();
 			JOptionPane.showConfirmDialog(rootPane, "There are currently "+Integer.toString(analyser.getLogCount())+" logs.\n"+analyser.getWorthyLogCount()+" of which are suitable for analysis.", "Log Analysis", JOptionPane.DEFAULT_OPTION);}
 		else if(arg0.getActionCommand().equalsIgnoreCase("pause")) {
+			// The simulation stops itself at the end of the current step.
+			// Suspending the thread could leave it holding the frame lock.
 			if(menuItemPause.getText().equalsIgnoreCase("Pause")){
 			sim.pause();
-			if(simulator != null){
-			simulator.suspend();}
 			menuItemPause.setText("Resume");}
 			else if(menuItemPause.getText().equalsIgnoreCase("Resume")){
-			sim.resume();
-			if(simulator != null){
-			simulator.resume();}
+			// Refused while the paused run is still finishing its step,
+			// or if it has no steps left, so the menu stays on Resume.
+			if(sim.resumeInBackground()){
 			menuItemPause.setText("Pause");}
+			else{
+			System.out.println("The simulation cannot be resumed yet.");}}
 		}
 		else if(arg0.getActionCommand().equalsIgnoreCase("rabbits")) {
 			try {
@@ -345,6 +630,17 @@ public class SimulatorView extends JFrame implements ActionListener
      * a nested class (a class defined inside a class) which
      * defines a custom component for the user interface. This
      * component displays the field.
+     * The field is held in an image with one pixel per location.
+     * The component shows part of it through a viewport that can be
+     * zoomed with the mouse wheel, panned by dragging, and reset to
+     * show the whole field with a double click. When zoomed out past
+     * one location per pixel it shows a heat map instead, with one
+     * pixel for each tile of locations coloured by how much of the
+     * tile is occupied. The heat map is kept at several levels, each
+     * with tiles twice as wide as the last, and the level drawn is the
+     * one with about one tile per screen pixel. Either way, painting
+     * only touches as many image pixels as there are on screen,
+     * however big the field.
      * This is rather advanced GUI stuff - you can ignore this 
      * for your project if you like.
      */
@@ -356,12 +652,34 @@ public class SimulatorView extends JFrame implements ActionListener
 		private static final long serialVersionUID = 1L;
 
 		private final int GRID_VIEW_SCALING_FACTOR = 6;
+        // The largest size the view asks for, in pixels.
+        private final int MAX_VIEW_SIZE = 720;
+        // How much one notch of the mouse wheel zooms by, and the
+        // least screen pixels per location.
+        private final double ZOOM_STEP = 1.25;
+        private final double MIN_ZOOM = 1.0 / 512;
+        // The colour of a heat map tile by the share of its locations
+        // occupied, in 256ths.
+        private final int[] HEAT_RAMP = heatRamp();
 
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
-        Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        private BufferedImage fieldImage;
+        // The pixels of fieldImage, one per location in row-major order.
+        private int[] pixels;
+        // Whether each location is occupied, one bit per location.
+        private long[] occupied;
+        // The levels of the heat map, finest first. Level k has tiles
+        // of 2 << k locations along each side.
+        private HeatLevel[] heatLevels;
+        // Screen pixels per location, and the location (in fractions of
+        // a location) at the top left of the component.
+        private double zoom;
+        private double originX, originY;
+        // Whether to keep the whole field in view as the component is
+        // resized; cleared once the user zooms or pans.
+        private boolean fitted;
+        // Where the mouse was when a drag started or last moved.
+        private int dragX, dragY;
 
         /**
          * Create a new FieldView component.
@@ -370,7 +688,50 @@ public class SimulatorView extends JFrame implements ActionListener
         {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+            occupied = new long[(width * height + 63) >>> 6];
+            // Down to a level of a single tile covering the field.
+            int levels = 1;
+            while((2 << (levels - 1)) < Math.max(width, height)) {
+                levels++;
+            }
+            heatLevels = new HeatLevel[levels];
+            for(int level = 0; level < levels; level++) {
+                heatLevels[level] = new HeatLevel(2 << level);
+            }
+            fitted = true;
+
+            MouseAdapter mouse = new MouseAdapter() {
+                public void mousePressed(MouseEvent e)
+                {
+                    dragX = e.getX();
+                    dragY = e.getY();
+                }
+
+                public void mouseDragged(MouseEvent e)
+                {
+                    pan(e.getX() - dragX, e.getY() - dragY);
+                    dragX = e.getX();
+                    dragY = e.getY();
+                }
+
+                public void mouseClicked(MouseEvent e)
+                {
+                    if(e.getClickCount() == 2) {
+                        fitted = true;
+                        repaint();
+                    }
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e)
+                {
+                    zoomAbout(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
         }
 
         /**
@@ -378,56 +739,324 @@ public class SimulatorView extends JFrame implements ActionListener
          */
         public Dimension getPreferredSize()
         {
-            return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
-                                 gridHeight * GRID_VIEW_SCALING_FACTOR);
+            return new Dimension(Math.min(gridWidth * GRID_VIEW_SCALING_FACTOR, MAX_VIEW_SIZE),
+                                 Math.min(gridHeight * GRID_VIEW_SCALING_FACTOR, MAX_VIEW_SIZE));
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
+         * Draw every location from the palette entries.
+         * @param entries The palette entry of each location.
+         * @param palette The RGB value of each palette entry.
          */
-        public void preparePaint()
+        public void drawAll(byte[] entries, int[] palette)
         {
-            if(! size.equals(getSize())) {  // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
+            for(int index = 0; index < pixels.length; index++) {
+                pixels[index] = palette[entries[index] & 0xff];
+            }
+            Arrays.fill(occupied, 0L);
+            HeatLevel finest = heatLevels[0];
+            Arrays.fill(finest.counts, 0);
+            int index = 0;
+            for(int row = 0; row < gridHeight; row++) {
+                for(int col = 0; col < gridWidth; col++, index++) {
+                    if(entries[index] != 0) {
+                        occupied[index >>> 6] |= 1L << index;
+                        finest.counts[finest.tileAt(row, col)]++;
+                    }
                 }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
+            }
+            for(int level = 1; level < heatLevels.length; level++) {
+                HeatLevel coarser = heatLevels[level];
+                HeatLevel finer = heatLevels[level - 1];
+                for(int tile = 0; tile < coarser.counts.length; tile++) {
+                    coarser.counts[tile] = finer.sumUnder(tile, coarser.wide);
                 }
             }
+            for(HeatLevel level : heatLevels) {
+                for(int tile = 0; tile < level.counts.length; tile++) {
+                    level.pixels[tile] = level.heat(tile);
+                }
+            }
+            repaint();
         }
-        
+
+        /**
+         * Redraw some locations from the palette entries, and repaint
+         * the part of the component that shows them.
+         * @param cells The locations to draw, as row * width + col.
+         * @param count The number of locations to draw.
+         * @param entries The palette entry of each location.
+         * @param palette The RGB value of each palette entry.
+         */
+        public void drawCells(int[] cells, int count, byte[] entries, int[] palette)
+        {
+            int top = Integer.MAX_VALUE, left = Integer.MAX_VALUE;
+            int bottom = -1, right = -1;
+            HeatLevel finest = heatLevels[0];
+            for(int i = 0; i < count; i++) {
+                int index = cells[i];
+                int row = index / gridWidth;
+                int col = index % gridWidth;
+                pixels[index] = palette[entries[index] & 0xff];
+                long bit = 1L << index;
+                boolean wasOccupied = (occupied[index >>> 6] & bit) != 0;
+                if(wasOccupied != (entries[index] != 0)) {
+                    occupied[index >>> 6] ^= bit;
+                    int tile = finest.tileAt(row, col);
+                    finest.counts[tile] += wasOccupied ? -1 : 1;
+                    finest.mark(tile);
+                }
+                top = Math.min(top, row);
+                bottom = Math.max(bottom, row);
+                left = Math.min(left, col);
+                right = Math.max(right, col);
+            }
+            // Each changed tile changes the one tile above it, so a
+            // level has at most as many changes as the level below.
+            for(int level = 0; level < heatLevels.length; level++) {
+                HeatLevel changed = heatLevels[level];
+                HeatLevel coarser = (level + 1 < heatLevels.length) ? heatLevels[level + 1] : null;
+                for(int i = 0; i < changed.changedCount; i++) {
+                    int tile = changed.changedTiles[i];
+                    changed.pixels[tile] = changed.heat(tile);
+                    changed.changed[tile] = false;
+                    if(coarser != null) {
+                        int above = (tile / changed.wide / 2) * coarser.wide + (tile % changed.wide) / 2;
+                        if(!coarser.changed[above]) {
+                            coarser.counts[above] = changed.sumUnder(above, coarser.wide);
+                            coarser.mark(above);
+                        }
+                    }
+                }
+                changed.changedCount = 0;
+            }
+            repaintCells(top, left, bottom, right);
+        }
+
+        /**
+         * @return The colour of a heat map tile for each share of its
+         *         locations occupied, in 256ths, from empty to full.
+         */
+        private int[] heatRamp()
+        {
+            int[] ramp = new int[257];
+            for(int share = 0; share <= 256; share++) {
+                int red = EMPTY_COLOR.getRed() + (DENSE_COLOR.getRed() - EMPTY_COLOR.getRed()) * share / 256;
+                int green = EMPTY_COLOR.getGreen() + (DENSE_COLOR.getGreen() - EMPTY_COLOR.getGreen()) * share / 256;
+                int blue = EMPTY_COLOR.getBlue() + (DENSE_COLOR.getBlue() - EMPTY_COLOR.getBlue()) * share / 256;
+                ramp[share] = red << 16 | green << 8 | blue;
+            }
+            return ramp;
+        }
+
+        /**
+         * Repaint the part of the component showing a block of locations.
+         * @param top The first row of the block.
+         * @param left The first column of the block.
+         * @param bottom The last row of the block.
+         * @param right The last column of the block.
+         */
+        public void repaintCells(int top, int left, int bottom, int right)
+        {
+            fitIfNeeded();
+            int x = (int) Math.floor((left - originX) * zoom);
+            int y = (int) Math.floor((top - originY) * zoom);
+            int endX = (int) Math.ceil((right + 1 - originX) * zoom);
+            int endY = (int) Math.ceil((bottom + 1 - originY) * zoom);
+            if(endX > 0 && endY > 0 && x < getWidth() && y < getHeight()) {
+                repaint(x, y, endX - x, endY - y);
+            }
+        }
+
+        /**
+         * Move the view by a number of screen pixels.
+         * @param dx How far to move the field to the right.
+         * @param dy How far to move the field down.
+         */
+        private void pan(int dx, int dy)
+        {
+            fitIfNeeded();
+            fitted = false;
+            originX -= dx / zoom;
+            originY -= dy / zoom;
+            keepInView();
+            repaint();
+        }
+
+        /**
+         * Zoom the view, keeping the location under a point of the
+         * component where it is.
+         * @param x The point to zoom about, across the component.
+         * @param y The point to zoom about, down the component.
+         * @param factor How much to zoom in by; below 1 zooms out.
+         */
+        private void zoomAbout(int x, int y, double factor)
+        {
+            fitIfNeeded();
+            fitted = false;
+            double atX = originX + x / zoom;
+            double atY = originY + y / zoom;
+            zoom = Math.max(MIN_ZOOM, Math.min(zoom * factor, 64));
+            originX = atX - x / zoom;
+            originY = atY - y / zoom;
+            keepInView();
+            repaint();
+        }
+
         /**
-         * Paint on grid location on this field in a given color.
+         * Stop the field being panned entirely out of view. At least
+         * half of the component always shows some of the field.
          */
-        public void drawMark(int x, int y, Color color)
+        private void keepInView()
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            double wide = getWidth() / zoom;
+            double high = getHeight() / zoom;
+            originX = Math.max(-wide / 2, Math.min(originX, gridWidth - wide / 2));
+            originY = Math.max(-high / 2, Math.min(originY, gridHeight - high / 2));
+        }
+
+        /**
+         * While the view is fitted, choose the zoom and origin that
+         * show the whole field centred in the component.
+         */
+        private void fitIfNeeded()
+        {
+            if(fitted && getWidth() > 0 && getHeight() > 0) {
+                zoom = Math.min(getWidth() / (double) gridWidth,
+                                getHeight() / (double) gridHeight);
+                originX = (gridWidth - getWidth() / zoom) / 2;
+                originY = (gridHeight - getHeight() / zoom) / 2;
+            }
         }
 
         /**
          * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * visible part of the field image, or of the level of the heat
+         * map nearest one tile per screen pixel when zoomed out, to
+         * the screen in a single scaled draw.
          */
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                Dimension currentSize = getSize();
-                if(size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            fitIfNeeded();
+            BufferedImage image = fieldImage;
+            // The number of locations in one pixel of the image drawn.
+            int scale = 1;
+            if(zoom < 1) {
+                // Level k has tiles 2 << k wide, so the nearest to one
+                // tile per pixel is about log2(1 / zoom) - 1.
+                int level = (int) Math.round(Math.log(1 / zoom) / Math.log(2)) - 1;
+                if(level >= 0) {
+                    HeatLevel heat = heatLevels[Math.min(level, heatLevels.length - 1)];
+                    image = heat.image;
+                    scale = heat.side;
                 }
-                else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
+            }
+            // The visible part of the image, clipped to the image.
+            int firstCol = Math.max(0, (int) Math.floor(originX / scale));
+            int firstRow = Math.max(0, (int) Math.floor(originY / scale));
+            int lastCol = Math.min(image.getWidth(), (int) Math.ceil((originX + getWidth() / zoom) / scale));
+            int lastRow = Math.min(image.getHeight(), (int) Math.ceil((originY + getHeight() / zoom) / scale));
+            if(firstCol >= lastCol || firstRow >= lastRow) {
+                return;
+            }
+            int x = (int) Math.round((firstCol * scale - originX) * zoom);
+            int y = (int) Math.round((firstRow * scale - originY) * zoom);
+            int endX = (int) Math.round((lastCol * scale - originX) * zoom);
+            int endY = (int) Math.round((lastRow * scale - originY) * zoom);
+            g.drawImage(image, x, y, endX, endY, firstCol, firstRow, lastCol, lastRow, null);
+        }
+        /**
+         * One level of the heat map: the number of occupied locations
+         * in each tile, and an image with one pixel per tile coloured
+         * by how much of the tile is occupied.
+         */
+        private class HeatLevel
+        {
+            // The locations along each side of a tile, and the size
+            // of the level in tiles.
+            private int side;
+            private int wide, high;
+            private BufferedImage image;
+            private int[] pixels;
+            // The occupied locations in each tile.
+            private int[] counts;
+            // Whether each tile has changed since it was coloured, and
+            // the changed tiles themselves.
+            private boolean[] changed;
+            private int[] changedTiles;
+            private int changedCount;
+
+            /**
+             * @param side The locations along each side of a tile.
+             */
+            public HeatLevel(int side)
+            {
+                this.side = side;
+                wide = (gridWidth + side - 1) / side;
+                high = (gridHeight + side - 1) / side;
+                image = new BufferedImage(wide, high, BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                counts = new int[wide * high];
+                changed = new boolean[wide * high];
+                changedTiles = new int[wide * high];
+            }
+
+            /**
+             * @param row The row of a location.
+             * @param col The column of a location.
+             * @return The tile holding the location.
+             */
+            public int tileAt(int row, int col)
+            {
+                return (row / side) * wide + col / side;
+            }
+
+            /**
+             * Note that a tile needs colouring again.
+             * @param tile The tile.
+             */
+            public void mark(int tile)
+            {
+                if(!changed[tile]) {
+                    changed[tile] = true;
+                    changedTiles[changedCount++] = tile;
+                }
+            }
+
+            /**
+             * Add up the counts of the (up to four) tiles of this
+             * level under a tile of the next coarser level.
+             * @param above The tile of the coarser level.
+             * @param aboveWide The width of the coarser level in tiles.
+             * @return The occupied locations under that tile.
+             */
+            public int sumUnder(int above, int aboveWide)
+            {
+                int row = (above / aboveWide) * 2;
+                int col = (above % aboveWide) * 2;
+                int sum = 0;
+                for(int r = row; r < Math.min(row + 2, high); r++) {
+                    for(int c = col; c < Math.min(col + 2, wide); c++) {
+                        sum += counts[r * wide + c];
+                    }
                 }
+                return sum;
+            }
+
+            /**
+             * Return the colour of a tile by how much of it is
+             * occupied. Tiles on the right and bottom edges may be
+             * partly outside the field.
+             * @param tile The index of the tile.
+             * @return The RGB value for the tile.
+             */
+            public int heat(int tile)
+            {
+                long cols = Math.min(side, gridWidth - (tile % wide) * side);
+                long rows = Math.min(side, gridHeight - (tile / wide) * side);
+                return HEAT_RAMP[(int) (counts[tile] * 256L / (rows * cols))];
             }
         }
     }
@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a picture of the field being saved.
+ */
+@Name("foxesandrabbits.Snapshot")
+@Label("Field Snapshot")
+@Category("Foxes and Rabbits")
+@Description("A picture of the field saved to a file")
+public class SnapshotEvent extends jdk.jfr.Event
+{
+    @Label("Step")
+    public int step;
+
+    @Label("File")
+    public String file;
+}
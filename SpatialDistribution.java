@@ -0,0 +1,28 @@
+/**
+ * Describe how the animals and traps of a new world are spread over
+ * the field. A distribution scales the creation probabilities at each
+ * location by a density between 0 and 1, where 1 means the full
+ * probability applies.
+ */
+public interface SpatialDistribution
+{
+    /**
+     * Prepare the distribution for a field of the given dimensions.
+     * This is called once before each world is generated, and any
+     * randomness must come from the seed given so that the same seed
+     * always produces the same world.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The seed for this world.
+     */
+    public void prepare(int depth, int width, long seed);
+
+    /**
+     * Return the density at a location. This may be called from
+     * several threads at once.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return A density between 0 and 1.
+     */
+    public double density(int row, int col);
+}
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event counting what happened to the animals in
+ * one simulation step.
+ */
+@Name("foxesandrabbits.StepActivity")
+@Label("Step Activity")
+@Category("Foxes and Rabbits")
+@StackTrace(false)
+@Description("Births, deaths, predation and trappings in one step")
+public class StepActivityEvent extends jdk.jfr.Event
+{
+    @Label("Step")
+    public int step;
+
+    @Label("Births")
+    public int births;
+
+    @Label("Deaths")
+    @Description("Animals that died for any reason, including those eaten or trapped")
+    public int deaths;
+
+    @Label("Rabbits Eaten")
+    public int eaten;
+
+    @Label("Animals Trapped")
+    public int trapped;
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for one simulation step, lasting from its
+ * start to its end, with the populations at the end. Steps are
+ * frequent, so no stack trace is taken.
+ */
+@Name("foxesandrabbits.Step")
+@Label("Simulation Step")
+@Category("Foxes and Rabbits")
+@StackTrace(false)
+@Description("One step of a simulation, with the populations at its end")
+public class StepEvent extends jdk.jfr.Event
+{
+    @Label("Step")
+    public int step;
+
+    @Label("Rabbits")
+    public int rabbits;
+
+    @Label("Foxes")
+    public int foxes;
+
+    @Label("Objects")
+    public int objects;
+}
@@ -0,0 +1,372 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times each phase of a simulation step, and each step as a whole,
+ * into latency histograms.
+ *
+ * Timing can be switched on and off while the simulation runs. When
+ * it is off, a step only reads whether it is on, once; switching it
+ * on or off takes effect from the next step.
+ *
+ * While timing is on, the bytes allocated by the thread running each
+ * phase can be counted too, where the JVM supports it, along with the
+ * time spent collecting garbage during each step. Garbage collection
+ * time is for the whole JVM, so is only meaningful when a single
+ * simulation is running.
+ *
+ * A step is timed by taking a mark when it starts and passing the
+ * mark from phase to phase:
+ *
+ *     long start = timer.start();
+ *     long mark = start;
+ *     ...
+ *     mark = timer.lap(StepTimer.RABBITS, mark);
+ *     ...
+ *     timer.end(start, animals);
+ */
+public class StepTimer
+{
+    // The phases of a step.
+    public static final int RABBITS = 0;
+    public static final int FOXES = 1;
+    public static final int OBJECTS = 2;
+    public static final int POPULATIONS = 3;
+    public static final int DISEASE = 4;
+    public static final int STATUS = 5;
+    public static final int COUNTING = 6;
+    public static final int EXPORT = 7;
+    public static final int LOGGING = 8;
+    // The name of each phase, for reports.
+    private static final String[] PHASE_NAMES = {
+        "rabbits", "foxes", "objects", "populations", "disease",
+        "status", "counting", "export", "logging"
+    };
+    // The percentiles shown in reports.
+    private static final double[] REPORTED = { 50, 90, 99, 99.9 };
+
+    // Whether steps are being timed, and whether their allocation is
+    // being counted.
+    private volatile boolean enabled;
+    private volatile boolean allocation;
+    // The durations of each phase, and of whole steps.
+    private LatencyHistogram[] phases;
+    private LatencyHistogram steps;
+    // The bytes allocated in each phase, the steps they were counted
+    // over, and the bytes, animal steps and garbage collection time
+    // in milliseconds over those steps.
+    private AtomicLongArray phaseBytes;
+    private AtomicLong countedSteps;
+    private AtomicLong stepBytes;
+    private AtomicLong animalSteps;
+    private AtomicLong collectionMillis;
+    // Where allocation and garbage collection are measured. threads
+    // is null if the JVM cannot count allocation.
+    private com.sun.management.ThreadMXBean threads;
+    private List<GarbageCollectorMXBean> collectors;
+
+    // The rest is only used by the thread running the steps.
+    // Whether allocation is being counted in the current step, the
+    // allocation at its start and at the end of the latest phase, and
+    // the collection time at its start.
+    private boolean counting;
+    private long startBytes;
+    private long markBytes;
+    private long startCollection;
+
+    /**
+     * Create a timer, switched off.
+     */
+    public StepTimer()
+    {
+        phases = new LatencyHistogram[PHASE_NAMES.length];
+        for(int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        steps = new LatencyHistogram();
+        phaseBytes = new AtomicLongArray(PHASE_NAMES.length);
+        countedSteps = new AtomicLong();
+        stepBytes = new AtomicLong();
+        animalSteps = new AtomicLong();
+        collectionMillis = new AtomicLong();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(threadBean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) threadBean;
+            if(!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            }
+        }
+        collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    }
+
+    /**
+     * @param on true to time the following steps, false to stop.
+     */
+    public void setEnabled(boolean on)
+    {
+        enabled = on;
+    }
+
+    /**
+     * @return true if steps are being timed.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Count the bytes allocated in each phase while steps are timed.
+     * @param on true to count allocation, false to stop.
+     * @return true if this JVM can count allocation.
+     */
+    public boolean setAllocationEnabled(boolean on)
+    {
+        if(on && threads != null && !threads.isThreadAllocatedMemoryEnabled()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        allocation = on && threads != null;
+        return threads != null;
+    }
+
+    /**
+     * @return true if allocation is being counted.
+     */
+    public boolean isAllocationEnabled()
+    {
+        return allocation;
+    }
+
+    /**
+     * Start timing a step.
+     * @return The mark to pass to the first phase, or 0 if timing is off.
+     */
+    public long start()
+    {
+        if(!enabled) {
+            return 0;
+        }
+        counting = allocation;
+        if(counting) {
+            startBytes = allocatedBytes();
+            markBytes = startBytes;
+            startCollection = collectionTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the end of a phase.
+     * @param phase The phase that has ended.
+     * @param mark The mark returned when the step started or the
+     *             phase before ended.
+     * @return The mark to pass to the next phase.
+     */
+    public long lap(int phase, long mark)
+    {
+        if(mark == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        phases[phase].record(now - mark);
+        if(counting) {
+            long bytes = allocatedBytes();
+            phaseBytes.addAndGet(phase, bytes - markBytes);
+            markBytes = bytes;
+            // Leave the reading itself out of the next phase.
+            return System.nanoTime();
+        }
+        return now;
+    }
+
+    /**
+     * Record the end of a step.
+     * @param start The mark returned when the step started.
+     * @param animals The number of animals at the end of the step.
+     */
+    public void end(long start, int animals)
+    {
+        if(start == 0) {
+            return;
+        }
+        steps.record(System.nanoTime() - start);
+        if(counting) {
+            stepBytes.addAndGet(markBytes - startBytes);
+            animalSteps.addAndGet(animals);
+            collectionMillis.addAndGet(collectionTime() - startCollection);
+            countedSteps.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The bytes allocated so far by the current thread.
+     */
+    private long allocatedBytes()
+    {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return The time spent collecting garbage so far, in milliseconds.
+     */
+    private long collectionTime()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * @param phase A phase.
+     * @return The durations of the phase.
+     */
+    public LatencyHistogram getPhase(int phase)
+    {
+        return phases[phase];
+    }
+
+    /**
+     * @return The durations of whole steps.
+     */
+    public LatencyHistogram getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @param phase A phase.
+     * @return The mean bytes allocated in the phase each step, or 0 if
+     *         allocation has not been counted.
+     */
+    public double getPhaseBytes(int phase)
+    {
+        long counted = countedSteps.get();
+        return (counted == 0) ? 0 : (double) phaseBytes.get(phase) / counted;
+    }
+
+    /**
+     * @return The mean bytes allocated each step, or 0 if allocation
+     *         has not been counted.
+     */
+    public double getBytesPerStep()
+    {
+        long counted = countedSteps.get();
+        return (counted == 0) ? 0 : (double) stepBytes.get() / counted;
+    }
+
+    /**
+     * @return The mean bytes allocated for each animal in each step,
+     *         or 0 if allocation has not been counted.
+     */
+    public double getBytesPerAnimalStep()
+    {
+        long animals = animalSteps.get();
+        return (animals == 0) ? 0 : (double) stepBytes.get() / animals;
+    }
+
+    /**
+     * @return The time spent collecting garbage during the steps whose
+     *         allocation was counted, in milliseconds.
+     */
+    public long getCollectionMillis()
+    {
+        return collectionMillis.get();
+    }
+
+    /**
+     * @return The number of steps whose allocation was counted.
+     */
+    public long getCountedSteps()
+    {
+        return countedSteps.get();
+    }
+
+    /**
+     * @return The number of phases in a step.
+     */
+    public int getPhaseCount()
+    {
+        return phases.length;
+    }
+
+    /**
+     * @param phase A phase.
+     * @return Its name.
+     */
+    public String getPhaseName(int phase)
+    {
+        return PHASE_NAMES[phase];
+    }
+
+    /**
+     * Forget every duration and allocation recorded.
+     */
+    public void reset()
+    {
+        for(LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        steps.reset();
+        for(int i = 0; i < phaseBytes.length(); i++) {
+            phaseBytes.set(i, 0);
+        }
+        countedSteps.set(0);
+        stepBytes.set(0);
+        animalSteps.set(0);
+        collectionMillis.set(0);
+    }
+
+    /**
+     * @return A table of the mean, percentiles and longest duration of
+     *         each phase and of whole steps, in microseconds. If
+     *         allocation has been counted, the mean bytes allocated in
+     *         each phase and step are shown as well.
+     */
+    public String report()
+    {
+        boolean bytes = countedSteps.get() > 0;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-12s %8s %9s", "phase", "count", "mean"));
+        for(double percentile : REPORTED) {
+            text.append(String.format(" %9s", "p" + (percentile == (int) percentile
+                                                     ? Integer.toString((int) percentile)
+                                                     : Double.toString(percentile))));
+        }
+        text.append(String.format(" %9s", "max"));
+        text.append(bytes ? String.format(" %11s%n", "bytes") : String.format("%n"));
+        for(int i = 0; i < phases.length; i++) {
+            appendRow(text, PHASE_NAMES[i], phases[i], bytes ? getPhaseBytes(i) : -1);
+        }
+        appendRow(text, "step", steps, bytes ? getBytesPerStep() : -1);
+        if(bytes) {
+            text.append(String.format("%.1f bytes per animal per step, %d ms collecting garbage over %d steps%n",
+                                      getBytesPerAnimalStep(), getCollectionMillis(), getCountedSteps()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Add one row to a report.
+     * @param text The report.
+     * @param name The name of the row.
+     * @param histogram The durations to show.
+     * @param bytes The mean bytes allocated, or -1 to leave them out.
+     */
+    private static void appendRow(StringBuilder text, String name, LatencyHistogram histogram,
+                                  double bytes)
+    {
+        text.append(String.format("%-12s %8d %9.1f", name, histogram.getCount(),
+                                  histogram.getMean() / 1000));
+        for(double percentile : REPORTED) {
+            text.append(String.format(" %9.1f", histogram.getPercentile(percentile) / 1000.0));
+        }
+        text.append(String.format(" %9.1f", histogram.getMax() / 1000.0));
+        text.append(bytes >= 0 ? String.format(" %11.0f%n", bytes) : String.format("%n"));
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A summary of every committed run in a binary log, kept in a file
+ * beside it.
+ *
+ * Summarising a run means reading all its counts, so each run is only
+ * summarised once: when the log grows, just the runs added since the
+ * summaries were last saved are read, and their summaries are added
+ * to the end of the file.
+ */
+public class SummaryIndex
+{
+    // Marks the start of a summary file, and the version of its format.
+    private static final int MAGIC = 0x4c53554d;
+    private static final int VERSION = 2;
+    // The size of the header of a summary file.
+    private static final int HEADER_SIZE = 20;
+
+    // The log summarised, and the file the summaries are kept in.
+    private File log;
+    private File summaryFile;
+    // Where each summarised run starts in the log.
+    private List<Long> offsets;
+    // The summary of each run.
+    private List<RunSummary> summaries;
+    // How many runs are in the summary file and where they end, or -1
+    // if it must be written again in full.
+    private int savedRuns = -1;
+    private long savedLength;
+
+    /**
+     * Open the summaries of a log. They are not brought up to date
+     * until refreshed.
+     * @param log The log file.
+     */
+    public SummaryIndex(File log)
+    {
+        this.log = log;
+        summaryFile = new File(log.getPath() + ".sum");
+        offsets = new ArrayList<Long>();
+        summaries = new ArrayList<RunSummary>();
+        load();
+    }
+
+    /**
+     * Summarise any runs of the log not yet summarised, and save the
+     * summaries if they changed.
+     * @param index The index of the log.
+     * @param reader A reader over the committed runs of the log.
+     * @return true if new runs were summarised.
+     * @throws IOException If the log cannot be read.
+     */
+    public boolean refresh(LogIndex index, LogReader reader) throws IOException
+    {
+        long[] logged = index.getOffsets();
+        int runs = summaries.size();
+        if(runs > logged.length || (runs > 0 && offsets.get(runs - 1) != logged[runs - 1])) {
+            // The log has been replaced, so start again.
+            offsets.clear();
+            summaries.clear();
+            savedRuns = -1;
+        }
+        if(summaries.size() == logged.length) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(log, "r");
+        try {
+            int[] column = new int[0];
+            for(int run = summaries.size(); run < logged.length; run++) {
+                Map<String, String> properties = BinaryLog.readRunProperties(raf, logged[run]);
+                int steps = reader.getSteps(run);
+                String[] species = reader.getSpeciesNames(run);
+                int[] firsts = new int[species.length];
+                int[] minimums = new int[species.length];
+                int[] maximums = new int[species.length];
+                int[] finals = new int[species.length];
+                int[] extinctions = new int[species.length];
+                for(int s = 0; s < species.length; s++) {
+                    column = reader.getColumn(run, s, column);
+                    int min = Integer.MAX_VALUE;
+                    int max = 0;
+                    int lastAlive = -1;
+                    for(int step = 0; step < steps; step++) {
+                        int count = column[step];
+                        min = Math.min(min, count);
+                        max = Math.max(max, count);
+                        if(count > 0) {
+                            lastAlive = step;
+                        }
+                    }
+                    if(steps > 0) {
+                        firsts[s] = column[0];
+                        minimums[s] = min;
+                        finals[s] = column[steps - 1];
+                    }
+                    maximums[s] = max;
+                    extinctions[s] = (lastAlive == steps - 1) ? -1 : lastAlive + 1;
+                }
+                offsets.add(logged[run]);
+                summaries.add(new RunSummary(properties, steps, species, firsts,
+                                             minimums, maximums, finals, extinctions));
+            }
+        }
+        finally {
+            raf.close();
+        }
+        save();
+        return true;
+    }
+
+    /**
+     * @return The number of runs summarised.
+     */
+    public int getRunCount()
+    {
+        return summaries.size();
+    }
+
+    /**
+     * @param run The index of a run.
+     * @return Its summary.
+     */
+    public RunSummary getSummary(int run)
+    {
+        return summaries.get(run);
+    }
+
+    /**
+     * Read the saved summaries, if there are any. Damaged summaries
+     * are ignored and made again.
+     */
+    private void load()
+    {
+        if(!summaryFile.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(summaryFile), 1 << 16));
+            try {
+                if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return;
+                }
+                int runs = in.readInt();
+                long length = in.readLong();
+                List<Long> savedOffsets = new ArrayList<Long>(runs);
+                List<RunSummary> saved = new ArrayList<RunSummary>(runs);
+                for(int i = 0; i < runs; i++) {
+                    savedOffsets.add(in.readLong());
+                    int steps = in.readInt();
+                    Map<String, String> properties = new LinkedHashMap<String, String>();
+                    int count = in.readInt();
+                    for(int p = 0; p < count; p++) {
+                        String name = in.readUTF();
+                        properties.put(name, in.readUTF());
+                    }
+                    String[] species = new String[in.readInt()];
+                    int[] firsts = new int[species.length];
+                    int[] minimums = new int[species.length];
+                    int[] maximums = new int[species.length];
+                    int[] finals = new int[species.length];
+                    int[] extinctions = new int[species.length];
+                    for(int s = 0; s < species.length; s++) {
+                        species[s] = in.readUTF();
+                        firsts[s] = in.readInt();
+                        minimums[s] = in.readInt();
+                        maximums[s] = in.readInt();
+                        finals[s] = in.readInt();
+                        extinctions[s] = in.readInt();
+                    }
+                    saved.add(new RunSummary(properties, steps, species, firsts,
+                                             minimums, maximums, finals, extinctions));
+                }
+                offsets = savedOffsets;
+                summaries = saved;
+                savedRuns = runs;
+                savedLength = length;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch(IOException e) {
+            // Summarise the log again.
+        }
+    }
+
+    /**
+     * Save the summaries. Runs summarised since they were last saved
+     * are written after those already in the file, and then the header
+     * is updated to count them. Otherwise the whole file is written
+     * again and then put in place of the old one.
+     */
+    private void save()
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            boolean append = savedRuns >= 0 && summaryFile.exists();
+            for(int i = append ? savedRuns : 0; i < summaries.size(); i++) {
+                writeRun(out, i);
+            }
+            long start = append ? savedLength : HEADER_SIZE;
+            long length = start + bytes.size();
+            File target = append ? summaryFile : new File(summaryFile.getPath() + ".tmp");
+            RandomAccessFile raf = new RandomAccessFile(target, "rw");
+            try {
+                raf.seek(start);
+                raf.write(bytes.toByteArray());
+                raf.setLength(length);
+                raf.seek(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(summaries.size());
+                raf.writeLong(length);
+            }
+            finally {
+                raf.close();
+            }
+            if(!append && !target.renameTo(summaryFile)) {
+                summaryFile.delete();
+                target.renameTo(summaryFile);
+            }
+            savedRuns = summaries.size();
+            savedLength = length;
+        }
+        catch(IOException e) {
+            System.out.println("Error writing log summaries \n" + e);
+            savedRuns = -1;
+        }
+    }
+
+    /**
+     * Write the summary of one run.
+     * @param out Where to write it.
+     * @param i The index of the run.
+     */
+    private void writeRun(DataOutputStream out, int i) throws IOException
+    {
+        RunSummary summary = summaries.get(i);
+        out.writeLong(offsets.get(i));
+        out.writeInt(summary.getSteps());
+        Map<String, String> properties = summary.getProperties();
+        out.writeInt(properties.size());
+        for(Map.Entry<String, String> property : properties.entrySet()) {
+            out.writeUTF(property.getKey());
+            out.writeUTF(property.getValue());
+        }
+        String[] species = summary.getSpeciesNames();
+        out.writeInt(species.length);
+        for(String name : species) {
+            out.writeUTF(name);
+            out.writeInt(summary.getFirst(name));
+            out.writeInt(summary.getMinimum(name));
+            out.writeInt(summary.getMaximum(name));
+            out.writeInt(summary.getFinal(name));
+            out.writeInt(summary.getExtinctionStep(name));
+        }
+    }
+}
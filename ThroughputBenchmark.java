@@ -0,0 +1,540 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measure how fast whole simulations run, headless, for a set of
+ * scenarios across field sizes and numbers of threads.
+ *
+ * Each scenario lays out its worlds from a fixed seed with its own
+ * creation probabilities. Each thread runs a simulator of its own, as
+ * a batch of runs would, so more threads show how the throughput of
+ * the machine scales rather than how one simulation speeds up. When
+ * a simulation stops being viable it is reset from the next seed.
+ * Only the steps are timed, and only their allocation is counted.
+ * Each simulator draws every random choice from its own generator,
+ * seeded from the world's seed, so a scenario does exactly the same
+ * work every run, and threads share nothing that would make them
+ * wait on each other. What is left between runs is the timing noise
+ * of the machine, so each row is the median of several repetitions.
+ *
+ * The results are written as comma separated values, one row for each
+ * scenario, size and number of threads: the repetition with the median
+ * throughput. Given the results of an
+ * earlier run as a baseline, each row is compared with the matching
+ * row of the baseline, and a regression is reported if the throughput
+ * fell, or the memory used rose, by more than a tolerance.
+ */
+public class ThroughputBenchmark
+{
+    // The columns of a results file.
+    private static final String[] COLUMNS = {
+        "scenario", "size", "threads", "steps", "resets", "seconds", "stepsPerSecond",
+        "cellsPerSecond", "peakHeapBytes", "bytesPerSecond", "bytesPerStep"
+    };
+    // The scenarios measured, by default.
+    private static final Scenario[] SCENARIOS = {
+        new Scenario("sparse", 0x5eed0001L, 0.002, 0.005, 0.02),
+        new Scenario("dense", 0x5eed0002L, 0.008, 0.08, 0.5),
+        new Scenario("trap-heavy", 0x5eed0003L, 0.15, 0.02, 0.08),
+        new Scenario("rabbit-boom", 0x5eed0004L, 0.0, 0.002, 0.08),
+        new Scenario("fox-crash", 0x5eed0005L, 0.008, 0.3, 0.03)
+    };
+    // The probability that an animal created with the field is diseased.
+    private static final double DISEASE_PROBABILITY = 0.01;
+    // The fraction throughput may fall by before it is a regression,
+    // by default.
+    private static final double DEFAULT_TOLERANCE = 0.1;
+    // The column the median repetition is chosen by.
+    private static final int THROUGHPUT_COLUMN = 6;
+
+    // The field sizes and numbers of threads measured.
+    private int[] sizes;
+    private int[] threads;
+    // The steps each thread takes before timing starts, and while timed.
+    private int warmupSteps;
+    private int steps;
+    // The times each row is measured, the median being kept.
+    private int repeats;
+    // The heap memory pools, whose peaks are added up.
+    private List<MemoryPoolMXBean> heapPools;
+
+    /**
+     * Create a benchmark.
+     * @param sizes The depths and widths of the fields to measure.
+     * @param threads The numbers of threads to measure.
+     * @param warmupSteps The steps each thread takes before timing starts.
+     * @param steps The steps each thread takes while timed.
+     * @param repeats The times each row is measured.
+     */
+    public ThroughputBenchmark(int[] sizes, int[] threads, int warmupSteps, int steps, int repeats)
+    {
+        this.sizes = sizes;
+        this.threads = threads;
+        this.warmupSteps = warmupSteps;
+        this.steps = steps;
+        this.repeats = Math.max(1, repeats);
+        heapPools = new ArrayList<MemoryPoolMXBean>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threadBean;
+            if(allocation.isThreadAllocatedMemorySupported()) {
+                allocation.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+    }
+
+    /**
+     * Measure every scenario at every size and number of threads.
+     * @return The results, one row for each measurement, with values
+     *         in the order of COLUMNS.
+     */
+    public List<String[]> run()
+    {
+        List<String[]> results = new ArrayList<String[]>();
+        for(Scenario scenario : SCENARIOS) {
+            for(int size : sizes) {
+                for(int count : threads) {
+                    String[] row = median(scenario, size, count);
+                    System.out.println(String.join(",", row));
+                    results.add(row);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Measure one scenario at one size and number of threads several
+     * times, and keep the repetition with the median throughput.
+     * @param scenario The scenario.
+     * @param size The depth and width of the field.
+     * @param count The number of threads.
+     * @return The median results, in the order of COLUMNS.
+     */
+    private String[] median(Scenario scenario, int size, int count)
+    {
+        String[][] rows = new String[repeats][];
+        for(int i = 0; i < repeats; i++) {
+            rows[i] = measure(scenario, size, count);
+        }
+        Arrays.sort(rows, new Comparator<String[]>() {
+            public int compare(String[] a, String[] b)
+            {
+                return Double.compare(Double.parseDouble(a[THROUGHPUT_COLUMN]),
+                                      Double.parseDouble(b[THROUGHPUT_COLUMN]));
+            }
+        });
+        return rows[repeats / 2];
+    }
+
+    /**
+     * Measure one scenario at one size and number of threads.
+     * @param scenario The scenario.
+     * @param size The depth and width of the field.
+     * @param count The number of threads.
+     * @return The results, in the order of COLUMNS.
+     */
+    private String[] measure(Scenario scenario, int size, int count)
+    {
+        List<Worker> workers = new ArrayList<Worker>();
+        for(int i = 0; i < count; i++) {
+            workers.add(new Worker(scenario, size));
+        }
+        System.gc();
+        for(MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(count);
+        try {
+            for(Future<Worker> done : pool.invokeAll(workers)) {
+                done.get();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        long peakHeap = 0;
+        for(MemoryPoolMXBean heapPool : heapPools) {
+            peakHeap += heapPool.getPeakUsage().getUsed();
+        }
+        // Each thread's rate is added, so the rates are those of the
+        // whole machine.
+        long totalSteps = 0;
+        int resets = 0;
+        double seconds = 0;
+        double stepsPerSecond = 0;
+        double bytesPerSecond = 0;
+        long bytes = 0;
+        for(Worker worker : workers) {
+            totalSteps += worker.steps;
+            resets += worker.resets;
+            double workerSeconds = worker.nanos / 1e9;
+            seconds = Math.max(seconds, workerSeconds);
+            stepsPerSecond += worker.steps / workerSeconds;
+            bytesPerSecond += worker.bytes / workerSeconds;
+            bytes += worker.bytes;
+        }
+        double bytesPerStep = (bytes < 0) ? -1 : (double) bytes / totalSteps;
+        return new String[] {
+            scenario.name, Integer.toString(size), Integer.toString(count),
+            Long.toString(totalSteps), Integer.toString(resets),
+            String.format(Locale.ROOT, "%.3f", seconds), String.format(Locale.ROOT, "%.1f", stepsPerSecond),
+            String.format(Locale.ROOT, "%.0f", stepsPerSecond * size * size), Long.toString(peakHeap),
+            String.format(Locale.ROOT, "%.0f", (bytes < 0) ? -1 : bytesPerSecond),
+            String.format(Locale.ROOT, "%.0f", bytesPerStep)
+        };
+    }
+
+    /**
+     * Write results as comma separated values, with a header.
+     * @param results The results, with values in the order of COLUMNS.
+     * @param file Where to write them.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(List<String[]> results, File file) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println(String.join(",", COLUMNS));
+            for(String[] row : results) {
+                out.println(String.join(",", row));
+            }
+        }
+        finally {
+            out.close();
+        }
+        if(out.checkError()) {
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    /**
+     * Read results written by an earlier run. Columns are found by
+     * their name in the header, so files with columns added or in
+     * another order can still be read.
+     * @param file The results file.
+     * @return Each row, by the name of each column.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<Map<String, String>> read(File file) throws IOException
+    {
+        List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine();
+            if(line == null) {
+                return rows;
+            }
+            String[] header = line.split(",");
+            while((line = in.readLine()) != null) {
+                if(line.isEmpty()) {
+                    continue;
+                }
+                String[] values = line.split(",");
+                Map<String, String> row = new HashMap<String, String>();
+                for(int i = 0; i < header.length && i < values.length; i++) {
+                    row.put(header[i], values[i]);
+                }
+                rows.add(row);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Compare results with a baseline, printing each change beyond the
+     * tolerances. Rows with no match in the baseline are skipped.
+     * @param results The results, with values in the order of COLUMNS.
+     * @param baseline The rows of the baseline.
+     * @param tolerance The fraction by which throughput may fall.
+     * @param memoryTolerance The fraction by which the peak heap and
+     *                        the allocation per step may rise. The
+     *                        allocation per second is not compared, as
+     *                        it rises with the throughput.
+     * @return The number of regressions found.
+     */
+    public static int compare(List<String[]> results, List<Map<String, String>> baseline,
+                              double tolerance, double memoryTolerance)
+    {
+        Map<String, Map<String, String>> expected = new HashMap<String, Map<String, String>>();
+        for(Map<String, String> row : baseline) {
+            expected.put(key(row.get("scenario"), row.get("size"), row.get("threads")), row);
+        }
+        int regressions = 0;
+        for(String[] result : results) {
+            String key = key(result[0], result[1], result[2]);
+            Map<String, String> before = expected.get(key);
+            if(before == null) {
+                continue;
+            }
+            Map<String, String> after = new HashMap<String, String>();
+            for(int i = 0; i < COLUMNS.length; i++) {
+                after.put(COLUMNS[i], result[i]);
+            }
+            if(regressed(key, "stepsPerSecond", before, after, -tolerance)) {
+                regressions++;
+            }
+            if(regressed(key, "peakHeapBytes", before, after, memoryTolerance)) {
+                regressions++;
+            }
+            if(regressed(key, "bytesPerStep", before, after, memoryTolerance)) {
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Check whether one value changed beyond its tolerance, and print
+     * it if it did.
+     * @param key The scenario, size and number of threads.
+     * @param column The name of the value.
+     * @param before The baseline row.
+     * @param after The new row.
+     * @param tolerance The fraction the value may change by: a fall if
+     *                  negative, a rise if positive.
+     * @return true if the value changed by more than that.
+     */
+    private static boolean regressed(String key, String column, Map<String, String> before,
+                                     Map<String, String> after, double tolerance)
+    {
+        String old = before.get(column);
+        if(old == null || after.get(column) == null) {
+            return false;
+        }
+        double expected = Double.parseDouble(old);
+        double actual = Double.parseDouble(after.get(column));
+        if(expected <= 0 || actual < 0) {
+            // Not measured.
+            return false;
+        }
+        double change = actual / expected - 1;
+        boolean worse = (tolerance < 0) ? change < tolerance : change > tolerance;
+        if(worse) {
+            System.out.println(String.format("REGRESSION %s %s: %s -> %s (%+.1f%%)",
+                                             key, column, old, after.get(column), change * 100));
+        }
+        return worse;
+    }
+
+    /**
+     * @return The key a row is matched with the baseline by.
+     */
+    private static String key(String scenario, String size, String threads)
+    {
+        return scenario + "/" + size + "/" + threads;
+    }
+
+    /**
+     * A fixed starting point for the simulations measured.
+     */
+    private static class Scenario
+    {
+        private String name;
+        private long seed;
+        private double trapProbability;
+        private double foxProbability;
+        private double rabbitProbability;
+
+        /**
+         * @param name The name of the scenario, in results.
+         * @param seed The seed of its first world.
+         * @param trapProbability The probability of a trap.
+         * @param foxProbability The probability of a fox.
+         * @param rabbitProbability The probability of a rabbit.
+         */
+        public Scenario(String name, long seed, double trapProbability,
+                        double foxProbability, double rabbitProbability)
+        {
+            this.name = name;
+            this.seed = seed;
+            this.trapProbability = trapProbability;
+            this.foxProbability = foxProbability;
+            this.rabbitProbability = rabbitProbability;
+        }
+    }
+
+    /**
+     * One thread's simulation, and what was measured of it.
+     */
+    private class Worker implements Callable<Worker>
+    {
+        private Scenario scenario;
+        private int size;
+        // The steps taken and simulations reset while timed.
+        private long steps;
+        private int resets;
+        // The time spent in the timed steps, and the bytes they
+        // allocated, or -1 if allocation cannot be counted.
+        private long nanos;
+        private long bytes;
+
+        /**
+         * @param scenario The scenario to simulate.
+         * @param size The depth and width of the field.
+         */
+        public Worker(Scenario scenario, int size)
+        {
+            this.scenario = scenario;
+            this.size = size;
+        }
+
+        /**
+         * Run the simulation, taking the warm-up steps and then the
+         * timed ones.
+         * @return This worker, once measured.
+         */
+        public Worker call()
+        {
+            Simulator simulator = new Simulator(size, size, true);
+            simulator.setGenerator(new WorldGenerator(scenario.trapProbability,
+                                                      scenario.foxProbability,
+                                                      scenario.rabbitProbability,
+                                                      DISEASE_PROBABILITY));
+            simulator.reset(scenario.seed);
+            com.sun.management.ThreadMXBean allocation = allocationBean();
+            long id = Thread.currentThread().getId();
+            int seeds = 1;
+            for(int i = 0; i < warmupSteps + ThroughputBenchmark.this.steps; i++) {
+                if(!simulator.getStats().isViable(simulator.getField())) {
+                    simulator.reset(WorldGenerator.mix(scenario.seed + seeds));
+                    seeds++;
+                    if(i >= warmupSteps) {
+                        resets++;
+                    }
+                }
+                if(i < warmupSteps) {
+                    simulator.simulateOneStep();
+                }
+                else {
+                    long before = (allocation == null) ? 0 : allocation.getThreadAllocatedBytes(id);
+                    long start = System.nanoTime();
+                    simulator.simulateOneStep();
+                    nanos += System.nanoTime() - start;
+                    if(allocation != null) {
+                        bytes += allocation.getThreadAllocatedBytes(id) - before;
+                    }
+                    steps++;
+                }
+            }
+            if(allocation == null) {
+                bytes = -1;
+            }
+            simulator.logger.abandon();
+            return this;
+        }
+    }
+
+    /**
+     * @return The bean counting each thread's allocation, or null if
+     *         the JVM cannot count it.
+     */
+    private static com.sun.management.ThreadMXBean allocationBean()
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threadBean;
+            if(allocation.isThreadAllocatedMemoryEnabled()) {
+                return allocation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse a list of numbers separated by commas.
+     * @param text The list.
+     * @return The numbers.
+     */
+    private static int[] parseList(String text)
+    {
+        String[] parts = text.split(",");
+        int[] numbers = new int[parts.length];
+        for(int i = 0; i < parts.length; i++) {
+            numbers[i] = Integer.parseInt(parts[i].trim());
+        }
+        return numbers;
+    }
+
+    /**
+     * Run the benchmark and write its results, then compare them with
+     * a baseline if one is given. Exits with status 1 if there are
+     * regressions.
+     * Arguments: results [baseline] [tolerance]
+     * The tolerance is the fraction throughput may fall by, 0.1 by
+     * default; a busy or shared machine may need more. The system
+     * properties benchmark.sizes and benchmark.threads list the
+     * sizes and numbers of threads to measure, benchmark.warmup and
+     * benchmark.steps set the steps each thread takes,
+     * benchmark.repeats the times each row is measured, 3 by default,
+     * and benchmark.memoryTolerance sets the fraction memory use may
+     * rise by, 0.3 by default.
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.out.println("Usage: java ThroughputBenchmark results [baseline] [tolerance]");
+            System.out.println("The tolerance is the fraction throughput may fall by, " + DEFAULT_TOLERANCE
+                               + " by default.");
+            System.out.println("Runs repeat the same work, so only the machine's own noise needs allowing for.");
+            return;
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] sizes = parseList(System.getProperty("benchmark.sizes", "100,400,1000"));
+        int[] threads = parseList(System.getProperty("benchmark.threads",
+                                                     (processors > 1) ? "1," + processors : "1"));
+        int warmup = Integer.parseInt(System.getProperty("benchmark.warmup", "200"));
+        int steps = Integer.parseInt(System.getProperty("benchmark.steps", "500"));
+        int repeats = Integer.parseInt(System.getProperty("benchmark.repeats", "3"));
+        double tolerance = (args.length > 2) ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        double memoryTolerance = Double.parseDouble(System.getProperty("benchmark.memoryTolerance", "0.3"));
+        System.out.println("Sizes " + Arrays.toString(sizes) + ", threads " + Arrays.toString(threads)
+                           + ", " + steps + " steps after " + warmup + ", median of " + repeats);
+        System.out.println(String.join(",", COLUMNS));
+        List<String[]> results = new ThroughputBenchmark(sizes, threads, warmup, steps, repeats).run();
+        write(results, new File(args[0]));
+        System.out.println("Wrote " + results.size() + " results to " + args[0]);
+        if(args.length > 1) {
+            int regressions = compare(results, read(new File(args[1])), tolerance, memoryTolerance);
+            System.out.println(regressions + " regressions against " + args[1]);
+            if(regressions > 0) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Spread animals and traps evenly over the field, so that every
+ * location has the full creation probability.
+ */
+public class UniformDistribution implements SpatialDistribution
+{
+    /**
+     * A uniform distribution needs no preparation.
+     */
+    public void prepare(int depth, int width, long seed)
+    {
+    }
+
+    /**
+     * @return Always 1.
+     */
+    public double density(int row, int col)
+    {
+        return 1.0;
+    }
+}
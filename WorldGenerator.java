@@ -0,0 +1,241 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Fill an empty field with a new world of rabbits, foxes and traps.
+ *
+ * The field is split into tiles of whole rows that are generated in
+ * parallel, each from its own seed derived from the world's seed, so
+ * a given seed always produces the same layout however many threads
+ * are used. Within a tile the generator does not visit every location:
+ * it draws the gap to the next occupied location from a geometric
+ * distribution and jumps straight to it. A spatial distribution can
+ * then thin the occupied locations out to make clusters or patches.
+ */
+public class WorldGenerator
+{
+    // The number of rows in one tile.
+    private static final int TILE_ROWS = 64;
+
+    // The probability that a location holds a trap.
+    private double trapProbability;
+    // The probability that a location without a trap holds a fox.
+    private double foxProbability;
+    // The probability that a location without a trap or fox holds a rabbit.
+    private double rabbitProbability;
+    // The probability that a new animal is diseased.
+    private double diseaseProbability;
+    // How the world is spread over the field.
+    private SpatialDistribution distribution;
+
+    /**
+     * Create a generator. The probabilities are applied in turn at
+     * each location, as a trap first, then a fox, then a rabbit.
+     * @param trapProbability The probability of a trap.
+     * @param foxProbability The probability of a fox.
+     * @param rabbitProbability The probability of a rabbit.
+     * @param diseaseProbability The probability that an animal is diseased.
+     */
+    public WorldGenerator(double trapProbability, double foxProbability,
+                          double rabbitProbability, double diseaseProbability)
+    {
+        this.trapProbability = trapProbability;
+        this.foxProbability = foxProbability;
+        this.rabbitProbability = rabbitProbability;
+        this.diseaseProbability = diseaseProbability;
+        distribution = new UniformDistribution();
+    }
+
+    /**
+     * Set how later worlds are spread over the field.
+     * @param distribution The spatial distribution to use.
+     */
+    public void setDistribution(SpatialDistribution distribution)
+    {
+        this.distribution = distribution;
+    }
+
+    /**
+     * Return how worlds are spread over the field.
+     * @return The spatial distribution in use.
+     */
+    public SpatialDistribution getDistribution()
+    {
+        return distribution;
+    }
+
+    /**
+     * @return The probability that a location holds a trap.
+     */
+    public double getTrapProbability()
+    {
+        return trapProbability;
+    }
+
+    /**
+     * @return The probability that a location without a trap holds a fox.
+     */
+    public double getFoxProbability()
+    {
+        return foxProbability;
+    }
+
+    /**
+     * @return The probability that a location without a trap or fox
+     *         holds a rabbit.
+     */
+    public double getRabbitProbability()
+    {
+        return rabbitProbability;
+    }
+
+    /**
+     * @return The probability that a new animal is diseased.
+     */
+    public double getDiseaseProbability()
+    {
+        return diseaseProbability;
+    }
+
+    /**
+     * Populate an empty field. The new entities are added to the
+     * given lists in row-major order of their locations.
+     * @param field The field to populate. It must be empty.
+     * @param seed The seed for this world.
+     * @param rabbits The list to add the new rabbits to.
+     * @param foxes The list to add the new foxes to.
+     * @param objects The list to add the new traps to.
+     * @throws IllegalStateException If the thread is interrupted while
+     *         the tiles are populated. The field is left empty, and
+     *         the thread's interrupt status is set.
+     */
+    public void populate(Field field, long seed, List<Rabbit> rabbits,
+                         List<Fox> foxes, List<Objects> objects)
+    {
+        distribution.prepare(field.getDepth(), field.getWidth(), seed);
+        List<Tile> tiles = new ArrayList<Tile>();
+        for(int firstRow = 0; firstRow < field.getDepth(); firstRow += TILE_ROWS) {
+            int lastRow = Math.min(firstRow + TILE_ROWS, field.getDepth());
+            tiles.add(new Tile(field, firstRow, lastRow, mix(seed + tiles.size())));
+        }
+        try {
+            for(Future<Tile> done : ForkJoinPool.commonPool().invokeAll(tiles)) {
+                done.get();
+            }
+        }
+        catch(InterruptedException e) {
+            // Never leave a half-built world to be simulated or logged.
+            field.clear();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while populating the field", e);
+        }
+        catch(ExecutionException e) {
+            field.clear();
+            throw new RuntimeException(e.getCause());
+        }
+        for(Tile tile : tiles) {
+            rabbits.addAll(tile.rabbits);
+            foxes.addAll(tile.foxes);
+            objects.addAll(tile.traps);
+        }
+    }
+
+    /**
+     * Scramble a value so that nearby inputs give unrelated outputs.
+     * This is the finaliser of the SplitMix64 generator.
+     * @param value The value to scramble.
+     * @return The scrambled value.
+     */
+    public static long mix(long value)
+    {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * The rows of the field generated by one task.
+     */
+    private class Tile implements Callable<Tile>
+    {
+        private Field field;
+        private int firstRow, lastRow;
+        private long seed;
+        // The entities created in this tile.
+        private List<Rabbit> rabbits = new ArrayList<Rabbit>();
+        private List<Fox> foxes = new ArrayList<Fox>();
+        private List<Trap> traps = new ArrayList<Trap>();
+
+        /**
+         * @param field The field being populated.
+         * @param firstRow The first row of the tile.
+         * @param lastRow The row after the last row of the tile.
+         * @param seed The seed for this tile.
+         */
+        public Tile(Field field, int firstRow, int lastRow, long seed)
+        {
+            this.field = field;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.seed = seed;
+        }
+
+        /**
+         * Visit each occupied location of the tile in turn.
+         * @return This tile, once populated.
+         */
+        public Tile call()
+        {
+            Random rand = new Random(seed);
+            int width = field.getWidth();
+            // The chances that a location holds a fox, a rabbit, or
+            // anything at all.
+            double foxShare = (1 - trapProbability) * foxProbability;
+            double rabbitShare = (1 - trapProbability) * (1 - foxProbability) * rabbitProbability;
+            double occupied = trapProbability + foxShare + rabbitShare;
+            if(occupied <= 0) {
+                return this;
+            }
+            double logEmpty = Math.log1p(-Math.min(occupied, 0.999999));
+            long cells = (long) (lastRow - firstRow) * width;
+            long cell = -1;
+            while(true) {
+                // Skip the run of empty locations before the next occupied one.
+                double u = 1.0 - rand.nextDouble();
+                cell += 1 + (long) (Math.log(u) / logEmpty);
+                if(cell >= cells) {
+                    return this;
+                }
+                int row = firstRow + (int) (cell / width);
+                int col = (int) (cell % width);
+                if(rand.nextDouble() >= distribution.density(row, col)) {
+                    continue;
+                }
+                double kind = rand.nextDouble() * occupied;
+                Location location = new Location(row, col);
+                if(kind < trapProbability) {
+                    traps.add(new Trap(field, location));
+                }
+                else if(kind < trapProbability + foxShare) {
+                    Fox fox = new Fox(true, field, location, rand);
+                    if(rand.nextDouble() <= diseaseProbability) {
+                        fox.setDiseased(true);
+                    }
+                    foxes.add(fox);
+                }
+                else {
+                    Rabbit rabbit = new Rabbit(true, field, location, rand);
+                    if(rand.nextDouble() <= diseaseProbability) {
+                        rabbit.setDiseased(true);
+                    }
+                    rabbits.add(rabbit);
+                }
+            }
+        }
+    }
+}
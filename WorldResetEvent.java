@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a simulation being reset to a new world.
+ */
+@Name("foxesandrabbits.WorldReset")
+@Label("World Reset")
+@Category("Foxes and Rabbits")
+@Description("A simulation reset to a newly populated world")
+public class WorldResetEvent extends jdk.jfr.Event
+{
+    @Label("Steps Taken")
+    @Description("The steps taken in the world replaced")
+    public int stepsTaken;
+
+    @Label("Seed")
+    public long seed;
+
+    @Label("Depth")
+    public int depth;
+
+    @Label("Width")
+    public int width;
+}
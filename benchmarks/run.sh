@@ -0,0 +1,25 @@
+#!/bin/bash
+# Build and run the JMH microbenchmarks.
+#
+# JMH_CLASSPATH must name the JMH jars: jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3. Any arguments are passed to JMH, so for
+# example
+#     ./run.sh FieldBenchmark -p size=200
+# runs one benchmark class at one size. The gc profiler is always on, so
+# each result is given in ns/op with the bytes allocated, B/op, beside it.
+if [ -z "$JMH_CLASSPATH" ]; then
+    echo "Set JMH_CLASSPATH to the JMH jars to run the benchmarks."
+    exit 1
+fi
+cd "$(dirname "$0")"
+rm -rf build
+mkdir -p build/simulator build/benchmarks
+echo "Compiling the simulator ..."
+javac -nowarn -d build/simulator ../*.java || exit 1
+echo "Compiling the benchmarks ..."
+javac -nowarn -cp "build/simulator:$JMH_CLASSPATH" -d build/benchmarks \
+    $(find src -name '*.java') || exit 1
+# Run from the build directory, so that the runs logged land there.
+cd build
+java -cp "benchmarks:simulator:$JMH_CLASSPATH" org.openjdk.jmh.Main -prof gc "$@"
+exit
@@ -0,0 +1,81 @@
+package foxesandrabbits.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of the animals acting: one pass of every rabbit, or every
+ * fox, acting once, as in a phase of a simulation step.
+ *
+ * Animals move, breed and die as they act, so a fresh field is filled
+ * to the given density before each pass, which is not timed. Divide by the number of animals for the cost of one act:
+ * about four fifths of the animals are rabbits and one fifth foxes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AnimalBenchmark
+{
+    // The depth and width of the field.
+    @Param({"50", "200", "1000", "4000"})
+    public int size;
+    // The share of the field filled with animals.
+    @Param({"0.05", "0.3", "0.7"})
+    public double density;
+
+    // The field.
+    private Object field;
+    // The animals in the field, and those born during the pass.
+    private List<Object> rabbits;
+    private List<Object> foxes;
+    private List<Object> born;
+    // The random choices of the animals, the same for every pass.
+    private Random rand;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Throwable
+    {
+        field = (Object) Sim.NEW_FIELD.invokeExact(size, size);
+        rabbits = new ArrayList<Object>();
+        foxes = new ArrayList<Object>();
+        born = new ArrayList<Object>();
+        rand = new Random(42);
+        Sim.populate(field, size, density, rabbits, foxes);
+    }
+
+    @Benchmark
+    public List<Object> rabbitsAct() throws Throwable
+    {
+        for(int i = 0; i < rabbits.size(); i++) {
+            Sim.RABBIT_ACT.invokeExact(rabbits.get(i), (List<?>) born, rand);
+        }
+        return born;
+    }
+
+    @Benchmark
+    public List<Object> foxesAct() throws Throwable
+    {
+        for(int i = 0; i < foxes.size(); i++) {
+            boolean ate = (boolean) Sim.FOX_ACT.invokeExact(foxes.get(i), (List<?>) born, rand);
+        }
+        return born;
+    }
+}
@@ -0,0 +1,103 @@
+package foxesandrabbits.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of looking around a field: finding the neighbours of a
+ * location, the free ones among them, and free locations anywhere.
+ *
+ * The field is filled to the given density, and the locations asked
+ * about are drawn from a fixed pool so that each call looks somewhere
+ * different without the drawing being timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FieldBenchmark
+{
+    // The number of locations asked about, a power of two.
+    private static final int POOL = 1024;
+
+    // The depth and width of the field.
+    @Param({"50", "200", "1000", "4000"})
+    public int size;
+    // The share of the field filled with animals.
+    @Param({"0.05", "0.3", "0.7"})
+    public double density;
+
+    // The field.
+    private Object field;
+    // The locations asked about, and the next one to ask about.
+    private Object[] locations;
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable
+    {
+        field = (Object) Sim.NEW_FIELD.invokeExact(size, size);
+        Sim.populate(field, size, density, new ArrayList<Object>(), new ArrayList<Object>());
+        Random random = new Random(7);
+        locations = new Object[POOL];
+        for(int i = 0; i < POOL; i++) {
+            locations[i] = (Object) Sim.NEW_LOCATION.invokeExact(random.nextInt(size),
+                                                                 random.nextInt(size));
+        }
+    }
+
+    /**
+     * @return The next location to ask about.
+     */
+    private Object nextLocation()
+    {
+        next = (next + 1) & (POOL - 1);
+        return locations[next];
+    }
+
+    @Benchmark
+    public List<?> adjacentLocations() throws Throwable
+    {
+        return (List<?>) Sim.ADJACENT_LOCATIONS.invokeExact(field, nextLocation());
+    }
+
+    @Benchmark
+    public List<?> getFreeAdjacentLocations() throws Throwable
+    {
+        return (List<?>) Sim.GET_FREE_ADJACENT_LOCATIONS.invokeExact(field, nextLocation());
+    }
+
+    @Benchmark
+    public Object freeAdjacentLocation() throws Throwable
+    {
+        return (Object) Sim.FREE_ADJACENT_LOCATION.invokeExact(field, nextLocation());
+    }
+
+    @Benchmark
+    public Object getRandomFreeLocation() throws Throwable
+    {
+        return (Object) Sim.GET_RANDOM_FREE_LOCATION.invokeExact(field);
+    }
+
+    @Benchmark
+    public int getLocationsLeft() throws Throwable
+    {
+        return (int) Sim.GET_LOCATIONS_LEFT.invokeExact(field);
+    }
+}
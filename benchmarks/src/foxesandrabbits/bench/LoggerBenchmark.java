@@ -0,0 +1,61 @@
+package foxesandrabbits.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of logging one step of a headless simulation.
+ *
+ * The field is counted once, before the first record, so this is the
+ * cost of copying the counts into the log's columns and, every so many
+ * steps, handing them to the writer thread. The writer streams the
+ * run to the Logs directory beside where the benchmarks are run from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoggerBenchmark
+{
+    // The depth and width of the field.
+    @Param({"50", "200", "1000", "4000"})
+    public int size;
+
+    // The simulator, and the log of its current run.
+    private Object simulator;
+    private Object logger;
+
+    @Setup
+    public void setUp() throws Throwable
+    {
+        simulator = (Object) Sim.NEW_SIMULATOR.invokeExact(size, size, true);
+        logger = (Object) Sim.GET_LOGGER.invokeExact(simulator);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable
+    {
+        Sim.ABANDON.invokeExact(logger);
+    }
+
+    @Benchmark
+    public Object addRecord() throws Throwable
+    {
+        Sim.ADD_RECORD.invokeExact(logger);
+        return logger;
+    }
+}
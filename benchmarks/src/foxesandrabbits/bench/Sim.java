@@ -0,0 +1,228 @@
+package foxesandrabbits.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Handles on the simulator's classes, for the benchmarks.
+ *
+ * The simulator is written in the default package, which code in a
+ * package cannot name, and JMH will not generate benchmarks in the
+ * default package. So the benchmarks reach the simulator through
+ * method handles, typed with Object in place of the simulator's
+ * classes. Held in static final fields and called with invokeExact,
+ * the handles are inlined by the JIT like ordinary calls, so they add
+ * nothing measurable to the code being timed.
+ */
+public final class Sim
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    // Field
+    public static final MethodHandle NEW_FIELD =
+        constructor("Field", int.class, int.class);
+    public static final MethodHandle ADJACENT_LOCATIONS =
+        method("Field", "adjacentLocations", List.class, "Location");
+    public static final MethodHandle GET_FREE_ADJACENT_LOCATIONS =
+        method("Field", "getFreeAdjacentLocations", List.class, "Location");
+    public static final MethodHandle FREE_ADJACENT_LOCATION =
+        method("Field", "freeAdjacentLocation", "Location", "Location");
+    public static final MethodHandle GET_RANDOM_FREE_LOCATION =
+        method("Field", "getRandomFreeLocation", "Location");
+    public static final MethodHandle GET_LOCATIONS_LEFT =
+        method("Field", "getLocationsLeft", int.class);
+    public static final MethodHandle PLACE =
+        method("Field", "place", void.class, Object.class, int.class, int.class);
+    public static final MethodHandle GET_OBJECT_AT =
+        method("Field", "getObjectAt", Object.class, int.class, int.class);
+
+    // Location
+    public static final MethodHandle NEW_LOCATION =
+        constructor("Location", int.class, int.class);
+
+    // Animals
+    public static final MethodHandle NEW_RABBIT =
+        constructor("Rabbit", boolean.class, "Field", "Location");
+    public static final MethodHandle NEW_FOX =
+        constructor("Fox", boolean.class, "Field", "Location");
+    public static final MethodHandle RABBIT_ACT =
+        method("Rabbit", "act", void.class, List.class, Random.class);
+    public static final MethodHandle FOX_ACT =
+        method("Fox", "act", boolean.class, List.class, Random.class);
+    public static final MethodHandle IS_ALIVE =
+        method("Animal", "isAlive", boolean.class);
+
+    // FieldStats
+    public static final MethodHandle NEW_FIELD_STATS =
+        constructor("FieldStats");
+    public static final MethodHandle STATS_RESET =
+        method("FieldStats", "reset", void.class);
+    public static final MethodHandle GET_COUNTED_CLASSES =
+        method("FieldStats", "getCountedClasses", Set.class, "Field");
+
+    // Simulator and Logger
+    public static final MethodHandle NEW_SIMULATOR =
+        constructor("Simulator", int.class, int.class, boolean.class);
+    public static final MethodHandle SIMULATE_ONE_STEP =
+        method("Simulator", "simulateOneStep", void.class);
+    public static final MethodHandle SIMULATOR_RESET =
+        method("Simulator", "reset", void.class);
+    public static final MethodHandle GET_FIELD =
+        method("Simulator", "getField", "Field");
+    public static final MethodHandle GET_STATS =
+        method("Simulator", "getStats", "FieldStats");
+    public static final MethodHandle IS_VIABLE =
+        method("FieldStats", "isViable", boolean.class, "Field");
+    public static final MethodHandle GET_LOGGER =
+        getter("Simulator", "logger", "Logger");
+    public static final MethodHandle ADD_RECORD =
+        method("Logger", "addRecord", void.class);
+    public static final MethodHandle ABANDON =
+        method("Logger", "abandon", void.class);
+
+    private Sim()
+    {
+    }
+
+    /**
+     * Fill a field with rabbits and foxes, four rabbits to each fox.
+     * The same locations are filled every time, though the animals'
+     * ages come from the simulator's own random generators.
+     * @param field The field, which should be empty.
+     * @param size The depth and width of the field.
+     * @param density The share of locations to fill, from 0 to 1.
+     * @param rabbits Where to put the rabbits made.
+     * @param foxes Where to put the foxes made.
+     */
+    public static void populate(Object field, int size, double density,
+                                List<Object> rabbits, List<Object> foxes) throws Throwable
+    {
+        Random random = new Random(42);
+        for(int row = 0; row < size; row++) {
+            for(int col = 0; col < size; col++) {
+                if(random.nextDouble() < density) {
+                    Object location = (Object) NEW_LOCATION.invokeExact(row, col);
+                    if(random.nextInt(5) == 0) {
+                        foxes.add((Object) NEW_FOX.invokeExact(true, field, location));
+                    }
+                    else {
+                        rabbits.add((Object) NEW_RABBIT.invokeExact(true, field, location));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Look up a public constructor, typed to take and return Object in
+     * place of the simulator's classes.
+     * @param className The simulator class.
+     * @param parameters The parameter types: classes, or the names of
+     *                   simulator classes.
+     * @return The handle.
+     */
+    private static MethodHandle constructor(String className, Object... parameters)
+    {
+        try {
+            Class<?> owner = Class.forName(className);
+            MethodHandle handle = LOOKUP.findConstructor(owner, MethodType.methodType(void.class, types(parameters)));
+            return handle.asType(erase(handle.type()));
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Look up a public method, typed to take and return Object in
+     * place of the simulator's classes.
+     * @param className The simulator class declaring or inheriting it.
+     * @param name The name of the method.
+     * @param returned The return type: a class, or the name of a
+     *                 simulator class.
+     * @param parameters The parameter types.
+     * @return The handle, taking the receiver first.
+     */
+    private static MethodHandle method(String className, String name, Object returned, Object... parameters)
+    {
+        try {
+            Class<?> owner = Class.forName(className);
+            MethodType type = MethodType.methodType(type(returned), types(parameters));
+            MethodHandle handle = LOOKUP.findVirtual(owner, name, type);
+            return handle.asType(erase(handle.type()));
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Look up a public field's getter, typed as for method.
+     * @param className The simulator class declaring the field.
+     * @param name The name of the field.
+     * @param type The type of the field.
+     * @return The handle, taking the object first.
+     */
+    private static MethodHandle getter(String className, String name, Object type)
+    {
+        try {
+            MethodHandle handle = LOOKUP.findGetter(Class.forName(className), name, type(type));
+            return handle.asType(erase(handle.type()));
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @param type A method type.
+     * @return The type with every simulator class replaced by Object.
+     */
+    private static MethodType erase(MethodType type)
+    {
+        for(int i = 0; i < type.parameterCount(); i++) {
+            if(isSimulatorClass(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if(isSimulatorClass(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return type;
+    }
+
+    /**
+     * @param type A class.
+     * @return true if it is one of the simulator's own classes.
+     */
+    private static boolean isSimulatorClass(Class<?> type)
+    {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+
+    /**
+     * @param types Classes, or the names of simulator classes.
+     * @return The classes.
+     */
+    private static Class<?>[] types(Object[] types) throws ClassNotFoundException
+    {
+        Class<?>[] classes = new Class<?>[types.length];
+        for(int i = 0; i < types.length; i++) {
+            classes[i] = type(types[i]);
+        }
+        return classes;
+    }
+
+    /**
+     * @param type A class, or the name of a simulator class.
+     * @return The class.
+     */
+    private static Class<?> type(Object type) throws ClassNotFoundException
+    {
+        return (type instanceof Class) ? (Class<?>) type : Class.forName((String) type);
+    }
+}
@@ -0,0 +1,73 @@
+package foxesandrabbits.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of a whole simulation step in a headless simulator.
+ *
+ * The simulator fills its own field, at the densities it always uses,
+ * so only the size of the field is varied. When the simulation stops
+ * being viable it is reset before the next step, without the reset
+ * being timed. Runs are logged to the Logs directory beside where the
+ * benchmarks are run from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SimulatorBenchmark
+{
+    // The depth and width of the field.
+    @Param({"50", "200", "1000", "4000"})
+    public int size;
+
+    // The simulator, its field and its statistics.
+    private Object simulator;
+    private Object field;
+    private Object stats;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable
+    {
+        simulator = (Object) Sim.NEW_SIMULATOR.invokeExact(size, size, true);
+        field = (Object) Sim.GET_FIELD.invokeExact(simulator);
+        stats = (Object) Sim.GET_STATS.invokeExact(simulator);
+    }
+
+    @Setup(Level.Invocation)
+    public void keepViable() throws Throwable
+    {
+        if(!(boolean) Sim.IS_VIABLE.invokeExact(stats, field)) {
+            Sim.SIMULATOR_RESET.invokeExact(simulator);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable
+    {
+        Sim.ABANDON.invokeExact((Object) Sim.GET_LOGGER.invokeExact(simulator));
+    }
+
+    @Benchmark
+    public Object simulateOneStep() throws Throwable
+    {
+        Sim.SIMULATE_ONE_STEP.invokeExact(simulator);
+        return simulator;
+    }
+}
@@ -0,0 +1,56 @@
+package foxesandrabbits.bench;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of counting what is in a field, as FieldStats does once
+ * each step when the counts are first asked for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatsBenchmark
+{
+    // The depth and width of the field.
+    @Param({"50", "200", "1000", "4000"})
+    public int size;
+    // The share of the field filled with animals.
+    @Param({"0.05", "0.3", "0.7"})
+    public double density;
+
+    // The field, and the statistics counting it.
+    private Object field;
+    private Object stats;
+
+    @Setup
+    public void setUp() throws Throwable
+    {
+        field = (Object) Sim.NEW_FIELD.invokeExact(size, size);
+        Sim.populate(field, size, density, new ArrayList<Object>(), new ArrayList<Object>());
+        stats = (Object) Sim.NEW_FIELD_STATS.invokeExact();
+    }
+
+    @Benchmark
+    public Set<?> count() throws Throwable
+    {
+        Sim.STATS_RESET.invokeExact(stats);
+        return (Set<?>) Sim.GET_COUNTED_CLASSES.invokeExact(stats, field);
+    }
+}